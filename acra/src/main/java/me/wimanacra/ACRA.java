@@ -247,6 +247,7 @@ public final class ACRA {
         // NB don't check if senderServiceProcess as it will gather these reports itself.
         if (checkReportsOnApplicationStart && !senderServiceProcess) {
             final ApplicationStartupProcessor startupProcessor = new ApplicationStartupProcessor(mApplication,  config);
+            startupProcessor.checkStoredReports();
             if (config.deleteOldUnsentReportsOnApplicationStart()) {
                 startupProcessor.deleteUnsentReportsFromOldAppVersion();
             }
@@ -298,7 +299,7 @@ public final class ACRA {
     }
 
     @Nullable
-    private static String getCurrentProcessName() {
+    static String getCurrentProcessName() {
         try {
             return IOUtils.streamToString(new FileInputStream("/proc/self/cmdline")).trim();
         } catch (IOException e) {
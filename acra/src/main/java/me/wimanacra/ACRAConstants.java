@@ -35,6 +35,18 @@ public final class ACRAConstants {
 
     public static final String REPORTFILE_EXTENSION = ".stacktrace";
 
+    /**
+     * Extension of the minimal report which is written before collection starts
+     * and replaced by the complete report afterwards.
+     */
+    public static final String STUBFILE_EXTENSION = ".stub";
+
+    /**
+     * Extension appended to the name of a report or stub while it is being written.
+     * The file is renamed to its final name once it is complete.
+     */
+    public static final String TEMPFILE_EXTENSION = ".tmp";
+
     /**
      * Suffix to be added to report files when they have been approved by the
      * user in NOTIFICATION mode
@@ -105,6 +117,26 @@ public final class ACRAConstants {
 
     public static final boolean DEFAULT_INCLUDE_DROPBOX_SYSTEM_TAGS = false;
 
+    /**
+     * Maximum number of DropBox entries collected per tag.
+     */
+    public static final int DROPBOX_MAX_ENTRIES_PER_TAG = 10;
+
+    /**
+     * Maximum number of characters of the text of a DropBox entry.
+     */
+    public static final int DROPBOX_MAX_TEXT_LENGTH = 500;
+
+    /**
+     * Maximum number of characters of the texts of all collected DropBox entries.
+     */
+    public static final int DROPBOX_MAX_TOTAL_LENGTH = 64 * 1024;
+
+    /**
+     * Maximum number of DropBox tags read in parallel.
+     */
+    public static final int DROPBOX_POOL_SIZE = 4;
+
     public static final int DEFAULT_SHARED_PREFERENCES_MODE = Context.MODE_PRIVATE;
 
     @DrawableRes
@@ -127,6 +159,11 @@ public final class ACRAConstants {
 
     public static final int DEFAULT_BUFFER_SIZE_IN_BYTES = 8192;
 
+    /**
+     * Encoded size in bytes above which string values of a loaded report are read lazily from the report file.
+     */
+    public static final int LAZY_VALUE_THRESHOLD = 16 * 1024;
+
     public static final boolean DEFAULT_LOGCAT_FILTER_BY_PID = false;
 
     public static final boolean DEFAULT_NON_BLOCKING_READ_FOR_LOGCAT = false;
@@ -137,6 +174,117 @@ public final class ACRAConstants {
 
     public static final int DEFAULT_APPLICATION_LOGFILE_LINES = DEFAULT_LOGCAT_LINES;
 
+    public static final boolean DEFAULT_PARALLEL_COLLECTION = false;
+
+    public static final int DEFAULT_COLLECTOR_TIMEOUT = 3000;
+
+    /**
+     * Maximum number of worker threads used to run collectors when collecting in parallel.
+     */
+    public static final int COLLECTOR_POOL_SIZE = 4;
+
+    public static final int DEFAULT_CAPTURE_BUDGET = 0;
+
+    /**
+     * Maximum number of threads reading child process output (logcat, dumpsys) in the background.
+     */
+    public static final int STREAM_PUMP_POOL_SIZE = 3;
+
+    /**
+     * Maximum number of streams waiting for a background reader. Further streams are not read.
+     */
+    public static final int STREAM_PUMP_QUEUE_SIZE = 8;
+
+    /**
+     * Maximum number of reports waiting to be handled asynchronously. Further reports are dropped.
+     */
+    public static final int ASYNC_REPORT_QUEUE_SIZE = 16;
+
+    public static final int DEFAULT_OOM_RESERVE_SIZE = 0;
+
+    /**
+     * Size of the buffer an emergency report is encoded into.
+     */
+    public static final int EMERGENCY_BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * Part of the emergency buffer which is kept free to close the report.
+     */
+    public static final int EMERGENCY_BUFFER_RESERVE = 32;
+
+    public static final int DEFAULT_MAIN_THREAD_STALL_THRESHOLD = 0;
+
+    public static final int DEFAULT_MAIN_THREAD_STALL_CHECK_INTERVAL = 1000;
+
+    /**
+     * Interval in milliseconds in which the main thread's stack is sampled during a stall.
+     */
+    public static final int STALL_SAMPLE_INTERVAL = 100;
+
+    /**
+     * Maximum time in milliseconds a stall is sampled before it is reported.
+     */
+    public static final int STALL_MAX_SAMPLING_DURATION = 10000;
+
+    /**
+     * Maximum number of distinct sampled stacks included in a stall report.
+     */
+    public static final int STALL_MAX_REPORTED_STACKS = 5;
+
+    /**
+     * Maximum number of frames per stack in {@link ReportField#ALL_THREADS}.
+     */
+    public static final int ALL_THREADS_MAX_FRAMES = 32;
+
+    /**
+     * Maximum number of thread names listed per group in {@link ReportField#ALL_THREADS}.
+     */
+    public static final int ALL_THREADS_MAX_NAMES = 10;
+
+    /**
+     * Maximum length in characters of {@link ReportField#ALL_THREADS}.
+     */
+    public static final int ALL_THREADS_MAX_LENGTH = 64 * 1024;
+
+    /**
+     * Maximum number of threads listed in {@link ReportField#PROCESS_RESOURCES}.
+     */
+    public static final int PROCESS_RESOURCES_MAX_THREADS = 256;
+
+    public static final int DEFAULT_BREADCRUMB_CAPACITY = 64;
+
+    public static final int DEFAULT_CUSTOM_DATA_MAX_VALUE_LENGTH = 0;
+
+    public static final int DEFAULT_CUSTOM_DATA_MAX_TOTAL_LENGTH = 0;
+
+    public static final int DEFAULT_LOGCAT_RING_BUFFER_SIZE = 0;
+
+    /**
+     * Average logcat line length in bytes assumed when sizing the line index of an in-memory logcat buffer.
+     */
+    public static final int LOGCAT_RING_BUFFER_LINE_LENGTH = 64;
+
+    /**
+     * Delay in milliseconds before a background logcat reader restarts logcat after it exited.
+     */
+    public static final int LOGCAT_READER_RESTART_DELAY = 5000;
+
+    public static final int DEFAULT_REPORT_COMPRESSION_LEVEL = 0;
+
+    public static final int DEFAULT_DUPLICATE_REPORT_BURST = 0;
+
+    public static final int DEFAULT_DUPLICATE_REPORT_WINDOW = 60000;
+
+    /**
+     * Maximum number of distinct stack trace hashes remembered for deduplication.
+     */
+    public static final int MAX_DUPLICATE_REPORT_HASHES = 32;
+
+    /**
+     * Part of the capture budget which is kept back for writing the report file.
+     */
+    public static final int CAPTURE_BUDGET_PERSIST_RESERVE = 250;
+
     /**
      * Default list of {@link ReportField}s to be sent in email reports. You can
      * set your own list with
@@ -156,7 +304,7 @@ public final class ACRAConstants {
             ReportField.PACKAGE_NAME, ReportField.FILE_PATH, ReportField.PHONE_MODEL, ReportField.BRAND, ReportField.PRODUCT, ReportField.ANDROID_VERSION, ReportField.BUILD, ReportField.TOTAL_MEM_SIZE,
             ReportField.AVAILABLE_MEM_SIZE, ReportField.BUILD_CONFIG, ReportField.CUSTOM_DATA, ReportField.IS_SILENT, ReportField.STACK_TRACE, ReportField.INITIAL_CONFIGURATION, ReportField.CRASH_CONFIGURATION,
             ReportField.DISPLAY, ReportField.USER_COMMENT, ReportField.USER_EMAIL, ReportField.USER_APP_START_DATE, ReportField.USER_CRASH_DATE, ReportField.DUMPSYS_MEMINFO, ReportField.LOGCAT,
-            ReportField.INSTALLATION_ID, ReportField.DEVICE_FEATURES, ReportField.ENVIRONMENT, ReportField.SHARED_PREFERENCES };
+            ReportField.INSTALLATION_ID, ReportField.DEVICE_FEATURES, ReportField.ENVIRONMENT, ReportField.SHARED_PREFERENCES, ReportField.DUPLICATE_COUNT, ReportField.BREADCRUMBS };
 
     public static final String DATE_TIME_FORMAT_STRING = "yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ";
 
@@ -164,5 +312,10 @@ public final class ACRAConstants {
 
     public static final Element NOT_AVAILABLE = new StringElement("N/A");
 
+    /**
+     * Placeholder for fields which were skipped because the capture budget ran out.
+     */
+    public static final Element OVER_BUDGET = new StringElement("N/A (over capture budget)");
+
     public static final String UTF8 = "UTF-8";
 }
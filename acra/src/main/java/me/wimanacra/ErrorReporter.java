@@ -22,6 +22,7 @@ import android.support.annotation.Nullable;
 
 import me.wimanacra.annotation.ReportsCrashes;
 import me.wimanacra.builder.LastActivityManager;
+import me.wimanacra.builder.MainThreadWatchdog;
 import me.wimanacra.builder.NoOpReportPrimer;
 import me.wimanacra.builder.ReportBuilder;
 import me.wimanacra.builder.ReportExecutor;
@@ -29,14 +30,18 @@ import me.wimanacra.builder.ReportPrimer;
 import me.wimanacra.collector.ConfigurationCollector;
 import me.wimanacra.collector.CrashReportDataFactory;
 import me.wimanacra.config.ACRAConfiguration;
+import me.wimanacra.file.EmergencyReportWriter;
 import me.wimanacra.model.Element;
 import me.wimanacra.util.ApplicationStartupProcessor;
+import me.wimanacra.util.BreadcrumbRingBuffer;
+import me.wimanacra.util.DaemonThreadFactory;
 import me.wimanacra.util.InstanceCreator;
 import me.wimanacra.util.ProcessFinisher;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -75,6 +80,13 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
     @NonNull
     private final ReportExecutor reportExecutor;
 
+    @Nullable
+    private final EmergencyReportWriter emergencyReportWriter;
+    @Nullable
+    private final MainThreadWatchdog mainThreadWatchdog;
+    private final boolean listenForUncaughtExceptions;
+    private boolean staticDataRequested;
+
     @NonNull
     private volatile ExceptionHandlerInitializer exceptionHandlerInitializer = new ExceptionHandlerInitializer() {
         @Override
@@ -98,6 +110,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         this.context = context;
         this.config = config;
         this.supportedAndroidVersion = supportedAndroidVersion;
+        this.listenForUncaughtExceptions = listenForUncaughtExceptions;
 
         // Store the initial Configuration state.
         // This is expensive to gather, so only do so if we plan to report it.
@@ -114,6 +127,13 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
 
         crashReportDataFactory = new CrashReportDataFactory(this.context, config, prefs, appStartDate, initialConfiguration);
 
+        // the emergency file belongs to the process which reports crashes, the sender process must not touch it
+        if (listenForUncaughtExceptions && config.oomReserveSize() > 0) {
+            emergencyReportWriter = new EmergencyReportWriter(context, ACRA.getCurrentProcessName(), config.oomReserveSize());
+        } else {
+            emergencyReportWriter = null;
+        }
+
         final Thread.UncaughtExceptionHandler defaultExceptionHandler;
         if (listenForUncaughtExceptions) {
             defaultExceptionHandler = Thread.getDefaultUncaughtExceptionHandler();
@@ -127,8 +147,61 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         final ReportPrimer reportPrimer = instanceCreator.create(config.reportPrimerClass(), new NoOpReportPrimer());
         final ProcessFinisher processFinisher = new ProcessFinisher(context, config, lastActivityManager);
 
-        reportExecutor = new ReportExecutor(context, config, crashReportDataFactory, defaultExceptionHandler, reportPrimer, processFinisher);
+        reportExecutor = new ReportExecutor(context, config, crashReportDataFactory, defaultExceptionHandler, reportPrimer, processFinisher, emergencyReportWriter);
         reportExecutor.setEnabled(enabled);
+
+        if (listenForUncaughtExceptions && config.mainThreadStallThreshold() > 0) {
+            mainThreadWatchdog = new MainThreadWatchdog(config, reportExecutor);
+        } else {
+            mainThreadWatchdog = null;
+        }
+        if (enabled) {
+            startBackgroundWork();
+        }
+    }
+
+    /**
+     * Starts the background work which prepares reports: collecting static data, recording logcat,
+     * reserving memory for out of memory errors and watching the main thread.
+     * Only a process which reports crashes needs it, not the sender process.
+     */
+    private synchronized void startBackgroundWork() {
+        if (!listenForUncaughtExceptions) {
+            return;
+        }
+        if (!staticDataRequested) {
+            // Values which cannot change during this process are collected once
+            staticDataRequested = true;
+            new DaemonThreadFactory("ACRA-static-data", Thread.MIN_PRIORITY).newThread(new Runnable() {
+                @Override
+                public void run() {
+                    crashReportDataFactory.collectStaticData();
+                }
+            }).start();
+        }
+        crashReportDataFactory.startLogcatRecording();
+        if (emergencyReportWriter != null) {
+            emergencyReportWriter.arm();
+        }
+        if (mainThreadWatchdog != null) {
+            mainThreadWatchdog.start();
+        }
+    }
+
+    /**
+     * Stops the background work started by {@link #startBackgroundWork()}. Static data which has been collected is kept.
+     */
+    private synchronized void stopBackgroundWork() {
+        if (!listenForUncaughtExceptions) {
+            return;
+        }
+        crashReportDataFactory.stopLogcatRecording();
+        if (emergencyReportWriter != null) {
+            emergencyReportWriter.disarm();
+        }
+        if (mainThreadWatchdog != null) {
+            mainThreadWatchdog.stop();
+        }
     }
 
     /**
@@ -202,6 +275,48 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                 };
     }
 
+    /**
+     * Leaves a breadcrumb which is reported in {@link ReportField#BREADCRUMBS} of the next report.
+     * Recording is lock free and cheap enough for hot paths. Use a constant message to avoid allocations.
+     *
+     * @param message What happened.
+     */
+    public void leaveBreadcrumb(@NonNull String message) {
+        crashReportDataFactory.leaveBreadcrumb(message, BreadcrumbRingBuffer.NO_VALUE);
+    }
+
+    /**
+     * Leaves a breadcrumb with a numeric value, e.g. a duration or a status code.
+     *
+     * @param message What happened.
+     * @param value   A number further describing the event.
+     * @see #leaveBreadcrumb(String)
+     */
+    public void leaveBreadcrumb(@NonNull String message, long value) {
+        crashReportDataFactory.leaveBreadcrumb(message, value);
+    }
+
+    /**
+     * Leaves a breadcrumb identified by an enum value, which never allocates.
+     *
+     * @param event What happened.
+     * @see #leaveBreadcrumb(String)
+     */
+    public void leaveBreadcrumb(@NonNull Enum<?> event) {
+        crashReportDataFactory.leaveBreadcrumb(event, BreadcrumbRingBuffer.NO_VALUE);
+    }
+
+    /**
+     * Leaves a breadcrumb identified by an enum value with a numeric value.
+     *
+     * @param event What happened.
+     * @param value A number further describing the event.
+     * @see #leaveBreadcrumb(String)
+     */
+    public void leaveBreadcrumb(@NonNull Enum<?> event, long value) {
+        crashReportDataFactory.leaveBreadcrumb(event, value);
+    }
+
     /**
      * Removes a key/value pair from your reports custom data field.
      *
@@ -254,6 +369,11 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         }
 
         try {
+            // Secure a minimal report before anything else allocates memory
+            if (emergencyReportWriter != null && EmergencyReportWriter.isOutOfMemory(e)) {
+                emergencyReportWriter.write(t, e);
+            }
+
             ACRA.log.e(ACRA.LOG_TAG, "ACRA caught a " + e.getClass().getSimpleName() + " for " + context.getPackageName(), e);
             if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Building report");
 
@@ -288,6 +408,24 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
                 .build(reportExecutor);
     }
 
+    /**
+     * Mark this report as silent as send it, without blocking the calling thread.
+     * Only the exception, the custom data and the time are captured on the calling thread,
+     * everything else happens on a background thread.
+     *
+     * @param e The {@link Throwable} to be reported. If null the report will
+     *          contain a new Exception("Report requested by developer").
+     * @return a Future which completes when the report has been handled, or is cancelled if the report was dropped because too many are pending.
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Future<?> handleSilentExceptionAsync(@Nullable Throwable e) {
+        performDeprecatedReportPriming();
+        return createAsyncReportBuilder(e)
+                .sendSilently()
+                .buildAsync(reportExecutor);
+    }
+
     /**
      * Enable or disable this ErrorReporter. By default it is enabled.
      *
@@ -299,6 +437,11 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         if (supportedAndroidVersion) {
             ACRA.log.i(ACRA.LOG_TAG, "ACRA is " + (enabled ? "enabled" : "disabled") + " for " + context.getPackageName());
             reportExecutor.setEnabled(enabled);
+            if (enabled) {
+                startBackgroundWork();
+            } else {
+                stopBackgroundWork();
+            }
         } else {
             ACRA.log.w(ACRA.LOG_TAG, "ACRA 4.7.0+ requires Froyo or greater. ACRA is disabled and will NOT catch crashes or send messages.");
         }
@@ -317,6 +460,7 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
     @SuppressWarnings( " unused" )
     public void checkReportsOnApplicationStart() {
         final ApplicationStartupProcessor startupProcessor = new ApplicationStartupProcessor(context,  config);
+        startupProcessor.checkStoredReports();
         if (config.deleteOldUnsentReportsOnApplicationStart()) {
             startupProcessor.deleteUnsentReportsFromOldAppVersion();
         }
@@ -350,6 +494,40 @@ public class ErrorReporter implements Thread.UncaughtExceptionHandler {
         builder.build(reportExecutor);
     }
 
+    /**
+     * Send a report for a {@link Throwable} with the reporting interaction mode
+     * configured by the developer, without blocking the calling thread.
+     * Only the exception, the custom data and the time are captured on the calling thread,
+     * everything else happens on a background thread.
+     *
+     * @param e
+     *            The {@link Throwable} to be reported. If null the report will
+     *            contain a new Exception("Report requested by developer").
+     * @param endApplication
+     *            Set this to true if you want the application to be ended after
+     *            sending the report.
+     * @return a Future which completes when the report has been handled, or is cancelled if the report was dropped because too many are pending.
+     */
+    @NonNull
+    @SuppressWarnings("unused")
+    public Future<?> handleExceptionAsync(@Nullable Throwable e, boolean endApplication) {
+        performDeprecatedReportPriming();
+        final ReportBuilder builder = createAsyncReportBuilder(e);
+        if (endApplication) {
+            builder.endApplication();
+        }
+        return builder.buildAsync(reportExecutor);
+    }
+
+    @NonNull
+    private ReportBuilder createAsyncReportBuilder(@Nullable Throwable e) {
+        // the report is collected later, so take a snapshot of everything that may change until then
+        return new ReportBuilder()
+                .exception(e)
+                .customDataSnapshot(crashReportDataFactory.getCustomDataSnapshot())
+                .timestamp(System.currentTimeMillis());
+    }
+
     /**
      * Send a report for a {@link Throwable} with the reporting interaction mode
      * configured by the developer, the application is then killed and restarted
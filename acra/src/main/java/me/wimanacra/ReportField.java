@@ -287,7 +287,40 @@ public enum ReportField {
     /**
      * Retrieves the user IP address(es).
      */
-    USER_IP;
+    USER_IP,
+    /**
+     * Number of further occurrences of this crash (same {@link #STACK_TRACE_HASH})
+     * which have been suppressed instead of being reported separately.
+     * See {@link ReportsCrashes#duplicateReportBurst()}.
+     */
+    DUPLICATE_COUNT,
+    /**
+     * Stack traces and states of all threads of the process. Threads with
+     * identical stacks are grouped, the number of frames per stack and the
+     * total size are limited.
+     */
+    ALL_THREADS,
+    /**
+     * Breadcrumbs left with {@link ErrorReporter#leaveBreadcrumb(String)} and
+     * its variants, oldest first. See {@link ReportsCrashes#breadcrumbCapacity()}.
+     */
+    BREADCRUMBS,
+    /**
+     * Memory state of the application process, collected in process as
+     * numbers: Java and native heap, PSS and dirty pages (in kB), runtime
+     * statistics and the memory lines of /proc/self/status (in kB).
+     * Unlike {@link #DUMPSYS_MEMINFO} this is also collected for
+     * {@link OutOfMemoryError}s, then only with the heap sizes and the
+     * /proc/self/status lines, in a flat object.
+     */
+    MEMORY_INFO,
+    /**
+     * Resource usage of the application process from /proc/self: number of
+     * open file descriptors and their limit, number of threads with state
+     * and CPU time (in clock ticks) per thread, context switches and I/O
+     * totals.
+     */
+    PROCESS_RESOURCES;
 
     /**
      * Whether this field is a collection of key/value pairs.
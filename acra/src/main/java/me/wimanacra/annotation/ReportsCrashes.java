@@ -37,6 +37,7 @@ import me.wimanacra.config.RetryPolicy;
 import me.wimanacra.dialog.BaseCrashReportDialog;
 import me.wimanacra.dialog.CrashReportDialog;
 import me.wimanacra.file.Directory;
+import me.wimanacra.file.StorageFormat;
 import me.wimanacra.security.KeyStoreFactory;
 import me.wimanacra.security.NoKeyStoreFactory;
 import me.wimanacra.sender.DefaultReportSenderFactory;
@@ -491,12 +492,165 @@ public @interface ReportsCrashes {
 
     /**
      * Set this to true if you want to read logcat lines in a non blocking way for your
-     * thread. It has a default timeout of 3 seconds.
+     * thread. Logcat output is then read on a shared background reader and
+     * given up {@link #collectorTimeout()} after the collection started.
      *
      * @return true if you want that reading of logcat lines to not block current thread.
      */
     boolean nonBlockingReadForLogcat() default ACRAConstants.DEFAULT_NON_BLOCKING_READ_FOR_LOGCAT;
 
+    /**
+     * Set this to true if you want the collectors to run concurrently on a
+     * bounded pool of worker threads instead of one after another on the
+     * crashing thread. Each collector has to finish within
+     * {@link #collectorTimeout()}, fields of a collector which overruns are
+     * reported as not available.
+     *
+     * @return true if collectors should run in parallel.
+     */
+    boolean parallelCollection() default ACRAConstants.DEFAULT_PARALLEL_COLLECTION;
+
+    /**
+     * To use in combination with {@link #parallelCollection()} to set the
+     * time a single collector may take before its fields are given up.
+     * If {@link #parallelCollection()} or {@link #nonBlockingReadForLogcat()}
+     * is set, also the time budget shared by all reads of child process output
+     * (dumpsys and, with {@link #nonBlockingReadForLogcat()}, logcat) of a report.
+     * Otherwise the output is read until it ends, unless the {@link #captureBudget()} runs out.
+     *
+     * @return Value in milliseconds for timeout of a collector (default 3000ms).
+     */
+    int collectorTimeout() default ACRAConstants.DEFAULT_COLLECTOR_TIMEOUT;
+
+    /**
+     * Overall time a crash report may take from priming to being written to
+     * disk. Collectors still running when the budget is about to run out are
+     * given up and their fields are reported as over budget, so that the
+     * report is persisted before the system kills the application. Without
+     * {@link #parallelCollection()}, the collectors still run one after
+     * another, but a collector which blocks past the budget is given up as
+     * well. A {@link me.wimanacra.builder.ReportPrimer} which does not finish
+     * within the budget is left behind and its data is not included. The wait
+     * for a toast is limited to the remaining budget as well.
+     * {@value ACRAConstants#CAPTURE_BUDGET_PERSIST_RESERVE}ms of the budget are
+     * kept back for writing the report, so the budget has to be larger than that.
+     *
+     * @return Value in milliseconds for the capture budget, or 0 to disable it (default).
+     */
+    int captureBudget() default ACRAConstants.DEFAULT_CAPTURE_BUDGET;
+
+    /**
+     * Size of a memory reserve which is allocated at init and released when
+     * an {@link OutOfMemoryError} is caught. Setting it also enables writing a
+     * minimal report (stack trace, thread, time and heap usage) through
+     * pre-allocated buffers into a pre-opened file before the regular report
+     * is collected, so that out of memory crashes are not lost if collecting
+     * the regular report fails.
+     *
+     * @return size of the reserve in bytes, or 0 to disable the out of memory path (default).
+     */
+    int oomReserveSize() default ACRAConstants.DEFAULT_OOM_RESERVE_SIZE;
+
+    /**
+     * Set this to report stalls of the main thread. If the main looper does
+     * not process a message within this time, the main thread's stack is
+     * sampled until the stall ends and a silent report is sent, containing
+     * the most frequent stack as stack trace and the stall duration and all
+     * sampled stacks as custom data. Sampling stops after
+     * {@value ACRAConstants#STALL_MAX_SAMPLING_DURATION}ms, a longer stall is
+     * reported with the duration it had reached by then.
+     *
+     * @return Value in milliseconds after which the main thread is considered stalled, or 0 to disable stall detection (default).
+     */
+    int mainThreadStallThreshold() default ACRAConstants.DEFAULT_MAIN_THREAD_STALL_THRESHOLD;
+
+    /**
+     * To use in combination with {@link #mainThreadStallThreshold()} to set
+     * how often the main looper is checked.
+     *
+     * @return Value in milliseconds between two checks (default 1000ms).
+     */
+    int mainThreadStallCheckInterval() default ACRAConstants.DEFAULT_MAIN_THREAD_STALL_CHECK_INTERVAL;
+
+    /**
+     * Number of breadcrumbs (see {@link me.wimanacra.ErrorReporter#leaveBreadcrumb(String)})
+     * which are kept for {@link ReportField#BREADCRUMBS}. Older breadcrumbs are
+     * overwritten. The capacity is rounded up to a power of two and
+     * allocated at init.
+     *
+     * @return number of breadcrumbs to keep, or 0 to disable breadcrumbs (default 64).
+     */
+    int breadcrumbCapacity() default ACRAConstants.DEFAULT_BREADCRUMB_CAPACITY;
+
+    /**
+     * Maximum length of a single value added with
+     * {@link me.wimanacra.ErrorReporter#putCustomData(String, String)}.
+     * Longer values are truncated. The length is counted in characters (UTF-16 code units), not bytes.
+     *
+     * @return maximum number of characters of a custom data value, or 0 for no limit (default 0).
+     */
+    int customDataMaxValueLength() default ACRAConstants.DEFAULT_CUSTOM_DATA_MAX_VALUE_LENGTH;
+
+    /**
+     * Maximum length of all keys and values of the custom data. Values which
+     * would exceed it are rejected. The length is counted in characters (UTF-16 code units), not bytes.
+     *
+     * @return maximum number of characters of all custom data, or 0 for no limit (default 0).
+     */
+    int customDataMaxTotalLength() default ACRAConstants.DEFAULT_CUSTOM_DATA_MAX_TOTAL_LENGTH;
+
+    /**
+     * Size in bytes of an in-memory buffer per logcat buffer (main, events,
+     * radio) which is continuously filled by a single background logcat reader
+     * from {@link me.wimanacra.ACRA#init} on. Before Lollipop only the first
+     * configured logcat field is recorded. Logcat fields are then copied from
+     * memory at crash time instead of forking logcat, which is faster and
+     * still works when the crashing process cannot fork anymore.
+     * {@link #logcatArguments()} are applied to the background reader, "-t"
+     * only limits the number of reported lines.
+     *
+     * @return size of each in-memory logcat buffer in bytes, or 0 to fork logcat at crash time (default).
+     */
+    int logcatRingBufferSize() default ACRAConstants.DEFAULT_LOGCAT_RING_BUFFER_SIZE;
+
+    /**
+     * Encoding of the report files stored until reports are sent. Reports are
+     * always sent in the format of the report senders, and stored reports of
+     * either format can be read, so this can be changed between releases.
+     *
+     * @return format of stored reports (default {@link StorageFormat#JSON}).
+     */
+    @NonNull StorageFormat reportStorageFormat() default StorageFormat.JSON;
+
+    /**
+     * Compresses stored report files with GZIP. Logcat and other dumps
+     * compress well, which saves storage while reports cannot be sent. Stored
+     * reports are recognized as compressed or not when they are read, so this
+     * can be changed between releases.
+     *
+     * @return compression level from 1 (fastest) to 9 (smallest), or 0 to store reports uncompressed (default).
+     */
+    int reportCompressionLevel() default ACRAConstants.DEFAULT_REPORT_COMPRESSION_LEVEL;
+
+    /**
+     * Number of reports with the same {@link ReportField#STACK_TRACE_HASH}
+     * which are collected within {@link #duplicateReportWindow()}. Further
+     * occurrences are not collected, they only increase the
+     * {@link ReportField#DUPLICATE_COUNT} of the report which has already been
+     * stored.
+     *
+     * @return maximum number of reports per stack trace and window, or 0 to disable deduplication (default).
+     */
+    int duplicateReportBurst() default ACRAConstants.DEFAULT_DUPLICATE_REPORT_BURST;
+
+    /**
+     * To use in combination with {@link #duplicateReportBurst()} to set the
+     * period in which at most that many reports of the same crash are collected.
+     *
+     * @return Value in milliseconds of the deduplication window (default 60000ms).
+     */
+    int duplicateReportWindow() default ACRAConstants.DEFAULT_DUPLICATE_REPORT_WINDOW;
+
     /**
      * Set this to false if you want to disable sending reports in development
      * mode. Only signed application packages will send reports. Default value
@@ -564,7 +718,8 @@ public @interface ReportsCrashes {
     /**
      * To use in combination with {@link ReportField#APPLICATION_LOG} to set the
      * number of latest lines of your application log file to be collected.
-     * Default value is 100.
+     * If the file has less lines, the lines of rotated files (file.1, file.2,
+     * ...) are collected as well. Default value is 100.
      *
      * @return number of lines to collect.
      */
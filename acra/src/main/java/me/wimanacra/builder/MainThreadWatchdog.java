@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.builder;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.config.ACRAConfiguration;
+import me.wimanacra.util.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects stalls of the main thread and reports them silently.
+ * <p>
+ * A single low priority daemon thread posts a pre-allocated runnable to the main looper and checks that it has run
+ * within the configured threshold. While the app is healthy nothing is allocated. Once a stall is detected the main
+ * thread's stack is sampled until the stall ends (or sampling takes too long), and a report is built whose exception
+ * carries the most frequently sampled stack. The stall duration and all distinct sampled stacks are added as custom data.
+ * For a stall which outlasts sampling, the duration is the time it had lasted when sampling stopped, and it is reported as
+ * not ended.
+ * </p>
+ */
+public final class MainThreadWatchdog implements Runnable {
+
+    private static final String CUSTOM_DATA_DURATION = "stall.duration";
+    private static final String CUSTOM_DATA_ENDED = "stall.ended";
+    private static final String CUSTOM_DATA_SAMPLES = "stall.samples";
+    private static final String CUSTOM_DATA_STACKS = "stall.stacks";
+
+    private final ReportExecutor reportExecutor;
+    private final int threshold;
+    private final int interval;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Thread mainThread = Looper.getMainLooper().getThread();
+
+    private Thread thread;
+    private volatile boolean pingPending;
+    private final Runnable ping = new Runnable() {
+        @Override
+        public void run() {
+            pingPending = false;
+        }
+    };
+
+    public MainThreadWatchdog(@NonNull ACRAConfiguration config, @NonNull ReportExecutor reportExecutor) {
+        this.reportExecutor = reportExecutor;
+        this.threshold = config.mainThreadStallThreshold();
+        this.interval = config.mainThreadStallCheckInterval();
+    }
+
+    /**
+     * Starts watching the main thread, unless it is already being watched.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new DaemonThreadFactory("ACRA-watchdog", Thread.MIN_PRIORITY).newThread(this);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops watching the main thread.
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                final long pingTime = SystemClock.uptimeMillis();
+                pingPending = true;
+                mainHandler.post(ping);
+                Thread.sleep(Math.min(threshold, interval));
+                while (pingPending) {
+                    if (SystemClock.uptimeMillis() - pingTime >= threshold) {
+                        handleStall(pingTime);
+                        break;
+                    }
+                    Thread.sleep(ACRAConstants.STALL_SAMPLE_INTERVAL);
+                }
+                // one check per interval, counted from the ping
+                final long remaining = interval - (SystemClock.uptimeMillis() - pingTime);
+                if (remaining > 0) {
+                    Thread.sleep(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Main thread watchdog stopped");
+        }
+    }
+
+    private void handleStall(long stallStart) throws InterruptedException {
+        final Map<List<StackTraceElement>, int[]> samples = new LinkedHashMap<List<StackTraceElement>, int[]>();
+        int sampleCount = 0;
+        while (pingPending && SystemClock.uptimeMillis() - stallStart < ACRAConstants.STALL_MAX_SAMPLING_DURATION) {
+            final List<StackTraceElement> stack = Arrays.asList(mainThread.getStackTrace());
+            final int[] count = samples.get(stack);
+            if (count == null) {
+                samples.put(stack, new int[]{1});
+            } else {
+                count[0]++;
+            }
+            sampleCount++;
+            Thread.sleep(ACRAConstants.STALL_SAMPLE_INTERVAL);
+        }
+        final long duration = SystemClock.uptimeMillis() - stallStart;
+        // sampling gives up on long stalls, their real duration is not known when the report is built
+        final boolean ended = !pingPending;
+
+        if (Debug.isDebuggerConnected()) {
+            // Breakpoints on the main thread look exactly like stalls
+            if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Ignoring main thread stall of " + duration + "ms, a debugger is attached");
+        } else {
+            report(samples, sampleCount, duration, ended);
+        }
+
+        // Report a long stall only once
+        while (pingPending) {
+            Thread.sleep(interval);
+        }
+    }
+
+    /**
+     * @param duration the duration of the stall, or the time it has lasted so far if it has not ended.
+     * @param ended    if the stall has ended.
+     */
+    private void report(@NonNull Map<List<StackTraceElement>, int[]> samples, int sampleCount, long duration, boolean ended) {
+        final List<Map.Entry<List<StackTraceElement>, int[]>> stacks = new ArrayList<Map.Entry<List<StackTraceElement>, int[]>>(samples.entrySet());
+        Collections.sort(stacks, new Comparator<Map.Entry<List<StackTraceElement>, int[]>>() {
+            @Override
+            public int compare(Map.Entry<List<StackTraceElement>, int[]> lhs, Map.Entry<List<StackTraceElement>, int[]> rhs) {
+                return rhs.getValue()[0] - lhs.getValue()[0];
+            }
+        });
+
+        final StallException exception = new StallException("Main thread stalled for " + (ended ? "" : "at least ") + duration + "ms");
+        if (!stacks.isEmpty()) {
+            final List<StackTraceElement> dominantStack = stacks.get(0).getKey();
+            exception.setStackTrace(dominantStack.toArray(new StackTraceElement[dominantStack.size()]));
+        }
+
+        final StringBuilder sampledStacks = new StringBuilder();
+        for (int i = 0; i < stacks.size() && i < ACRAConstants.STALL_MAX_REPORTED_STACKS; i++) {
+            final Map.Entry<List<StackTraceElement>, int[]> entry = stacks.get(i);
+            sampledStacks.append(entry.getValue()[0]).append('/').append(sampleCount).append(" samples:\n");
+            for (StackTraceElement element : entry.getKey()) {
+                sampledStacks.append("\tat ").append(element).append('\n');
+            }
+        }
+
+        ACRA.log.w(ACRA.LOG_TAG, exception.getMessage());
+        new ReportBuilder()
+                .exception(exception)
+                .customData(CUSTOM_DATA_DURATION, String.valueOf(duration))
+                .customData(CUSTOM_DATA_ENDED, String.valueOf(ended))
+                .customData(CUSTOM_DATA_SAMPLES, String.valueOf(sampleCount))
+                .customData(CUSTOM_DATA_STACKS, sampledStacks.toString())
+                .sendSilently()
+                .build(reportExecutor);
+    }
+
+    /**
+     * Reported in place of an exception when the main thread stalled.
+     */
+    public static final class StallException extends Exception {
+        private static final long serialVersionUID = -3478926021855167543L;
+
+        StallException(@NonNull String message) {
+            super(message);
+        }
+    }
+}
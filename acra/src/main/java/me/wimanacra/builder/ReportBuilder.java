@@ -5,6 +5,7 @@ import android.support.annotation.Nullable;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Fluent API used to assemble the different options used for a crash report.
@@ -17,6 +18,9 @@ public final class ReportBuilder {
     private Thread uncaughtExceptionThread;
     private Throwable exception;
     private final Map<String, String> customData = new HashMap<String, String>();
+    private Map<String, String> customDataSnapshot;
+
+    private Long timestamp;
 
     private boolean sendSilently = false;
     private boolean endApplication = false;
@@ -107,6 +111,42 @@ public final class ReportBuilder {
         return customData;
     }
 
+    /**
+     * Sets the globally specified custom data as it was when the error occurred.
+     * It is reported instead of the global custom data at the time of collection,
+     * so that later changes do not show up in a report which is collected in the background.
+     *
+     * @param snapshot a copy of the global custom data
+     * @return the updated {@code ReportBuilder}
+     */
+    @NonNull
+    public ReportBuilder customDataSnapshot(@NonNull Map<String, String> snapshot) {
+        customDataSnapshot = snapshot;
+        return this;
+    }
+
+    @Nullable
+    public Map<String, String> getCustomDataSnapshot() {
+        return customDataSnapshot;
+    }
+
+    /**
+     * Sets the time at which the reported error occurred. If not set, the time the report is collected is used.
+     *
+     * @param timestamp time of the error in milliseconds since the epoch
+     * @return the updated {@code ReportBuilder}
+     */
+    @NonNull
+    public ReportBuilder timestamp(long timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    @Nullable
+    public Long getTimestamp() {
+        return timestamp;
+    }
+
     /**
      * Forces the report to be sent silently, ignoring the default interaction mode set in the config
      *
@@ -149,4 +189,24 @@ public final class ReportBuilder {
 
         reportExecutor.execute(this);
     }
+
+    /**
+     * Assembles and sends the crash report on a background thread.
+     * The builder must not be modified after this call.
+     *
+     * @param reportExecutor    ReportExecutor to use to build the report.
+     * @return a Future which completes when the report has been handled, or is cancelled if the report was dropped.
+     * @see ReportExecutor#executeAsync(ReportBuilder)
+     */
+    @NonNull
+    public Future<?> buildAsync(@NonNull ReportExecutor reportExecutor) {
+        if (message == null && exception == null) {
+            message = "Report requested by developer";
+        }
+        if (timestamp == null) {
+            timestamp = System.currentTimeMillis();
+        }
+
+        return reportExecutor.executeAsync(this);
+    }
 }
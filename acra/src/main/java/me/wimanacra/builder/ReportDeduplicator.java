@@ -0,0 +1,315 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.builder;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.collector.CrashReportData;
+import me.wimanacra.config.ACRAConfiguration;
+import me.wimanacra.file.ReportLocator;
+import me.wimanacra.model.Element;
+import me.wimanacra.util.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rate limits reports per {@link ReportField#STACK_TRACE_HASH} with a token bucket for each hash.
+ * Occurrences which exceed the limit are only counted. The count is added to the {@link ReportField#DUPLICATE_COUNT}
+ * of the report which has last been stored for that hash when it is sent, or carried by the next report if that one is gone.
+ * <p>
+ * The most recently seen hashes are kept in a small file, so that the limit also holds across restarts.
+ * The file is shared with the sender process and only accessed while holding a file lock.
+ * Stored reports are never rewritten.
+ * </p>
+ */
+public final class ReportDeduplicator {
+
+    private static final String FOLDER_NAME = "ACRA-dedup";
+    private static final String FILE_NAME = "hashes";
+    private static final String LOCK_FILE_NAME = "hashes.lock";
+    private static final char SEPARATOR = '\t';
+
+    /**
+     * Returned by {@link #acquire(String, File)} for an occurrence which is not reported.
+     */
+    static final int SUPPRESSED = -1;
+
+    private final Context context;
+    private final int burst;
+    private final int window;
+
+    public ReportDeduplicator(@NonNull Context context, @NonNull ACRAConfiguration config) {
+        this.context = context;
+        this.burst = config.duplicateReportBurst();
+        this.window = config.duplicateReportWindow();
+    }
+
+    public boolean isEnabled() {
+        return burst > 0 && window > 0;
+    }
+
+    /**
+     * Takes a token for the given hash. If there is none left, the occurrence is counted instead.
+     * Otherwise the report of this occurrence takes over the occurrences which have been suppressed without a pending report
+     * to be sent with, and further suppressed occurrences are sent with it, unless an older report for the same hash is still pending.
+     * The state is read, updated and written once, under one lock.
+     *
+     * @param hash       stack trace hash of the current crash.
+     * @param reportFile file the report of this occurrence is going to be stored to.
+     * @return the number of suppressed occurrences the report has to carry, or {@link #SUPPRESSED} if no report should be collected.
+     */
+    synchronized int acquire(@NonNull String hash, @NonNull File reportFile) {
+        final FileLock lock = lock();
+        try {
+            final Map<String, Entry> entries = load();
+            Entry entry = entries.get(hash);
+            final long now = System.currentTimeMillis();
+            if (entry == null) {
+                entry = new Entry(burst, now);
+                entries.put(hash, entry);
+            }
+            // refill the bucket proportionally to the time passed, a full window refills it completely
+            final long elapsed = Math.max(now - entry.lastRefill, 0);
+            entry.tokens = Math.min(burst, entry.tokens + (double) elapsed * burst / window);
+            entry.lastRefill = now;
+
+            final int result;
+            if (entry.tokens < 1) {
+                entry.suppressed++;
+                if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Suppressed duplicate report for " + hash + ", count=" + entry.suppressed);
+                result = SUPPRESSED;
+            } else {
+                entry.tokens--;
+                if (entry.reportName != null && findReport(entry.reportName) != null) {
+                    // the pending report carries the count
+                    result = 0;
+                } else {
+                    result = entry.suppressed;
+                    entry.suppressed = 0;
+                    entry.reportName = reportFile.getName();
+                }
+            }
+            save(entries);
+            return result;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Adds the occurrences which have been suppressed since the report was stored to its {@link ReportField#DUPLICATE_COUNT}.
+     *
+     * @param reportFile the report which is about to be sent.
+     * @param crashData  the content of the report.
+     * @return the number of occurrences which have been added, to be passed to {@link #onReportSent(File, int)}.
+     */
+    public synchronized int attachCount(@NonNull File reportFile, @NonNull CrashReportData crashData) {
+        final FileLock lock = lock();
+        try {
+            final Entry entry = findEntry(load(), reportFile);
+            if (entry == null || entry.suppressed == 0) {
+                return 0;
+            }
+            int previous = 0;
+            final Element stored = crashData.get(ReportField.DUPLICATE_COUNT);
+            if (stored != null) {
+                try {
+                    previous = Integer.parseInt(stored.toString());
+                } catch (NumberFormatException e) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Ignoring malformed duplicate count " + stored + " of report " + reportFile);
+                }
+            }
+            crashData.putNumber(ReportField.DUPLICATE_COUNT, previous + entry.suppressed);
+            return entry.suppressed;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Forgets the occurrences which have been sent with a report. Later occurrences are carried by the next report.
+     *
+     * @param reportFile the report which has been sent.
+     * @param attached   the number returned by {@link #attachCount(File, CrashReportData)}.
+     */
+    public synchronized void onReportSent(@NonNull File reportFile, int attached) {
+        final FileLock lock = lock();
+        try {
+            final Map<String, Entry> entries = load();
+            final Entry entry = findEntry(entries, reportFile);
+            if (entry != null) {
+                entry.suppressed = Math.max(entry.suppressed - attached, 0);
+                entry.reportName = null;
+                save(entries);
+            }
+        } finally {
+            release(lock);
+        }
+    }
+
+    @Nullable
+    private static Entry findEntry(@NonNull Map<String, Entry> entries, @NonNull File reportFile) {
+        final String reportName = reportFile.getName();
+        for (Entry entry : entries.values()) {
+            if (reportName.equals(entry.reportName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private File findReport(@NonNull String reportName) {
+        final ReportLocator reportLocator = new ReportLocator(context);
+        final File unapproved = new File(reportLocator.getUnapprovedFolder(), reportName);
+        if (unapproved.exists()) {
+            return unapproved;
+        }
+        final File approved = new File(reportLocator.getApprovedFolder(), reportName);
+        if (approved.exists()) {
+            return approved;
+        }
+        return null;
+    }
+
+    @NonNull
+    private File getFolder() {
+        return context.getDir(FOLDER_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the stored entries, least recently used first.
+     */
+    @NonNull
+    private Map<String, Entry> load() {
+        final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(ACRAConstants.MAX_DUPLICATE_REPORT_HASHES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ACRAConstants.MAX_DUPLICATE_REPORT_HASHES;
+            }
+        };
+        final File file = new File(getFolder(), FILE_NAME);
+        if (!file.exists()) {
+            return entries;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ACRAConstants.UTF8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(String.valueOf(SEPARATOR), -1);
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    final Entry entry = new Entry(Double.parseDouble(parts[1]), Long.parseLong(parts[2]));
+                    entry.suppressed = Integer.parseInt(parts[3]);
+                    entry.reportName = parts[4].length() == 0 ? null : parts[4];
+                    entries.put(parts[0], entry);
+                } catch (NumberFormatException e) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Ignoring malformed deduplication entry : " + line);
+                }
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read deduplication state", e);
+        } finally {
+            IOUtils.safeClose(reader);
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the entries to a temporary file which then replaces the stored one, so that readers never see a partial file.
+     */
+    private void save(@NonNull Map<String, Entry> entries) {
+        final File file = new File(getFolder(), FILE_NAME);
+        final File temp = new File(getFolder(), FILE_NAME + ACRAConstants.TEMPFILE_EXTENSION);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), ACRAConstants.UTF8);
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                writer.append(e.getKey()).append(SEPARATOR)
+                        .append(String.valueOf(entry.tokens)).append(SEPARATOR)
+                        .append(String.valueOf(entry.lastRefill)).append(SEPARATOR)
+                        .append(String.valueOf(entry.suppressed)).append(SEPARATOR)
+                        .append(entry.reportName == null ? "" : entry.reportName).append('\n');
+            }
+            writer.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not write deduplication state", e);
+        } finally {
+            IOUtils.safeClose(writer);
+        }
+    }
+
+    /**
+     * Locks the state against other processes. Threads of this process are held off by synchronization.
+     *
+     * @return the lock, or null if locking is not possible.
+     */
+    @Nullable
+    private FileLock lock() {
+        RandomAccessFile lockAccess = null;
+        try {
+            lockAccess = new RandomAccessFile(new File(getFolder(), LOCK_FILE_NAME), "rw");
+            return lockAccess.getChannel().lock();
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not lock deduplication state", e);
+            IOUtils.safeClose(lockAccess);
+            return null;
+        }
+    }
+
+    private static void release(@Nullable FileLock lock) {
+        if (lock != null) {
+            // also releases the lock
+            IOUtils.safeClose(lock.channel());
+        }
+    }
+
+    private static final class Entry {
+        private double tokens;
+        private long lastRefill;
+        private int suppressed;
+        @Nullable
+        private String reportName;
+
+        Entry(double tokens, long lastRefill) {
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Debug;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.NotificationCompat;
@@ -21,15 +22,26 @@ import me.wimanacra.collector.CrashReportDataFactory;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.dialog.CrashReportDialog;
 import me.wimanacra.file.CrashReportPersister;
+import me.wimanacra.file.EmergencyReportWriter;
+import me.wimanacra.file.ReportIndex;
 import me.wimanacra.file.ReportLocator;
 import me.wimanacra.prefs.SharedPreferencesFactory;
 import me.wimanacra.sender.SenderServiceStarter;
+import me.wimanacra.util.DaemonThreadFactory;
 import me.wimanacra.util.ProcessFinisher;
 import me.wimanacra.util.ToastSender;
 
 import java.io.File;
 import java.util.Date;
-
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static me.wimanacra.ReportField.DUPLICATE_COUNT;
 import static me.wimanacra.ReportField.IS_SILENT;
 import static me.wimanacra.ReportField.USER_CRASH_DATE;
 
@@ -50,8 +62,11 @@ public final class ReportExecutor {
 
     private final ReportPrimer reportPrimer;
     private final ProcessFinisher processFinisher;
+    private final ReportDeduplicator reportDeduplicator;
+    private final EmergencyReportWriter emergencyReportWriter;
 
     private boolean enabled = false;
+    private ExecutorService asyncExecutor;
 
     /**
      * Used to create a new (non-cached) PendingIntent each time a new crash occurs.
@@ -60,13 +75,16 @@ public final class ReportExecutor {
 
     public ReportExecutor(@NonNull Context context, @NonNull ACRAConfiguration config,
                           @NonNull CrashReportDataFactory crashReportDataFactory, @Nullable Thread.UncaughtExceptionHandler defaultExceptionHandler,
-                          @NonNull ReportPrimer reportPrimer, @NonNull ProcessFinisher processFinisher) {
+                          @NonNull ReportPrimer reportPrimer, @NonNull ProcessFinisher processFinisher,
+                          @Nullable EmergencyReportWriter emergencyReportWriter) {
         this.context = context;
         this.config = config;
         this.crashReportDataFactory = crashReportDataFactory;
         this.defaultExceptionHandler = defaultExceptionHandler;
         this.reportPrimer = reportPrimer;
         this.processFinisher = processFinisher;
+        this.reportDeduplicator = new ReportDeduplicator(context, config);
+        this.emergencyReportWriter = emergencyReportWriter;
     }
 
     /**
@@ -108,6 +126,97 @@ public final class ReportExecutor {
         this.enabled = enabled;
     }
 
+    /**
+     * Hands the report to a single background thread, so that the caller is not blocked by collection and persistence.
+     * If too many reports are waiting already, the report is dropped and the returned Future is cancelled.
+     *
+     * @param reportBuilder The report builder used to assemble the report
+     * @return a Future which completes when the report has been handled.
+     */
+    @NonNull
+    public Future<?> executeAsync(@NonNull final ReportBuilder reportBuilder) {
+        return getAsyncExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    execute(reportBuilder);
+                } catch (RuntimeException e) {
+                    ACRA.log.e(ACRA.LOG_TAG, "Failed to handle report asynchronously", e);
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private synchronized ExecutorService getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(ACRAConstants.ASYNC_REPORT_QUEUE_SIZE), new DaemonThreadFactory("ACRA-report"),
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                            ACRA.log.w(ACRA.LOG_TAG, "Too many pending reports. Report dropped.");
+                            if (runnable instanceof Future) {
+                                ((Future<?>) runnable).cancel(false);
+                            }
+                        }
+                    });
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Lets the {@link ReportPrimer} add data to the report.
+     * With a deadline, the primer runs on its own thread on a copy of the builder, and the custom data it adds is only
+     * taken over if it finishes in time. A primer which is late is left running, it can no longer touch the report.
+     *
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) by which priming has to be done,
+     *                 or {@link CrashReportDataFactory#NO_DEADLINE}.
+     */
+    private void primeReport(@NonNull ReportBuilder reportBuilder, long deadline) {
+        if (deadline == CrashReportDataFactory.NO_DEADLINE) {
+            reportPrimer.primeReport(context, reportBuilder);
+            return;
+        }
+        final ReportBuilder primedBuilder = new ReportBuilder()
+                .message(reportBuilder.getMessage())
+                .uncaughtExceptionThread(reportBuilder.getUncaughtExceptionThread())
+                .exception(reportBuilder.getException())
+                .customData(reportBuilder.getCustomData());
+        final Long timestamp = reportBuilder.getTimestamp();
+        if (timestamp != null) {
+            primedBuilder.timestamp(timestamp);
+        }
+        final Map<String, String> customDataSnapshot = reportBuilder.getCustomDataSnapshot();
+        if (customDataSnapshot != null) {
+            primedBuilder.customDataSnapshot(customDataSnapshot);
+        }
+        if (reportBuilder.isSendSilently()) {
+            primedBuilder.sendSilently();
+        }
+        if (reportBuilder.isEndApplication()) {
+            primedBuilder.endApplication();
+        }
+        final Thread primer = new DaemonThreadFactory("ACRA-primer").newThread(new Runnable() {
+            @Override
+            public void run() {
+                reportPrimer.primeReport(context, primedBuilder);
+            }
+        });
+        primer.start();
+        try {
+            // join(0) would wait forever
+            primer.join(Math.max(deadline - SystemClock.elapsedRealtime(), 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (primer.isAlive()) {
+            ACRA.log.w(ACRA.LOG_TAG, "Report primer did not finish within the capture budget, its data is not included");
+            return;
+        }
+        reportBuilder.customData(primedBuilder.getCustomData());
+    }
+
     /**
      * Try to send a report, if an error occurs stores a report file for a later attempt.
      *
@@ -120,8 +229,44 @@ public final class ReportExecutor {
             return;
         }
 
+        // The capture budget covers deduplication, priming, collection and persistence
+        final long captureEnd = config.captureBudget() > 0 ? SystemClock.elapsedRealtime() + config.captureBudget() : CrashReportDataFactory.NO_DEADLINE;
+        // keep back some time to write whatever has been collected
+        final long collectionEnd = captureEnd != CrashReportDataFactory.NO_DEADLINE ? captureEnd - ACRAConstants.CAPTURE_BUDGET_PERSIST_RESERVE : CrashReportDataFactory.NO_DEADLINE;
+
+        // Persist the essentials of this crash before anything else can go wrong
+        final CrashReportData stubData = crashReportDataFactory.createStubData(reportBuilder);
+        final File reportFile = getReportFileName(stubData);
+
+        // Don't collect the same crash over and over again
+        final String stackTraceHash;
+        if (reportDeduplicator.isEnabled()) {
+            stackTraceHash = crashReportDataFactory.getStackTraceHash(reportBuilder);
+            final int duplicateCount = reportDeduplicator.acquire(stackTraceHash, reportFile);
+            if (duplicateCount == ReportDeduplicator.SUPPRESSED) {
+                ACRA.log.i(ACRA.LOG_TAG, "Too many reports for stack trace " + stackTraceHash + ". Report not collected.");
+                endApplicationIfRequested(reportBuilder);
+                return;
+            }
+            if (duplicateCount > 0) {
+                // occurrences which have been suppressed after the previous report for this crash was sent
+                stubData.putNumber(DUPLICATE_COUNT, duplicateCount);
+            }
+        } else {
+            stackTraceHash = null;
+        }
+
+        final File stubFile = getStubFile(reportFile);
+        // the index is marked until the report has been added to it, so a report left behind by a killed process is found
+        ReportIndex.getInstance(context).markDirty();
+        // the stub is not synced, one sync per crash is enough for the complete report
+        if (saveCrashReportFile(stubFile, stubData, false) && emergencyReportWriter != null) {
+            // the stub supersedes a minimal report written on OutOfMemoryError
+            emergencyReportWriter.discard();
+        }
+
         // Prime this crash report with any extra data.
-        reportPrimer.primeReport(context, reportBuilder);
+        primeReport(reportBuilder, collectionEnd);
 
         boolean sendOnlySilentReports = false;
         final ReportingInteractionMode reportingInteractionMode;
@@ -166,12 +311,21 @@ public final class ReportExecutor {
             // that the Toast can be read by the user.
         }
 
-        final CrashReportData crashReportData = crashReportDataFactory.createCrashData(reportBuilder);
+        final CrashReportData crashReportData = crashReportDataFactory.createCrashData(reportBuilder, stubData, collectionEnd);
+        // logged before writing, as the process may not survive the write
+        if (collectionEnd != CrashReportDataFactory.NO_DEADLINE && SystemClock.elapsedRealtime() > collectionEnd) {
+            ACRA.log.w(ACRA.LOG_TAG, "Crash report exceeded capture budget of " + config.captureBudget() + "ms");
+        }
 
-        // Always write the report file
+        // Always write the report file, it replaces the stub once it is complete
 
-        final File reportFile = getReportFileName(crashReportData);
-        saveCrashReportFile(reportFile, crashReportData);
+        if (saveCrashReportFile(reportFile, crashReportData, true)) {
+            ReportIndex.getInstance(context).add(reportFile, stackTraceHash);
+            if (!stubFile.delete()) {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not delete report stub : " + stubFile);
+            }
+            ReportIndex.getInstance(context).markClean();
+        }
 
         final SharedPreferences prefs = new SharedPreferencesFactory(context, config).create();
         if (reportingInteractionMode == ReportingInteractionMode.SILENT
@@ -204,7 +358,11 @@ public final class ReportExecutor {
                         ACRA.log.d(ACRA.LOG_TAG, "Waiting for " + ACRAConstants.TOAST_WAIT_DURATION
                                 + " millis from " + sentToastTimeMillis.initialTimeMillis
                                 + " currentMillis=" + System.currentTimeMillis());
-                    final long sleep = ACRAConstants.TOAST_WAIT_DURATION - sentToastTimeMillis.getElapsedTime();
+                    long sleep = ACRAConstants.TOAST_WAIT_DURATION - sentToastTimeMillis.getElapsedTime();
+                    if (captureEnd != CrashReportDataFactory.NO_DEADLINE) {
+                        // Don't let the toast delay the end of the application beyond the capture budget
+                        sleep = Math.min(sleep, captureEnd - SystemClock.elapsedRealtime());
+                    }
                     try {
                         // Wait a bit to let the user read the toast
                         if (sleep > 0L) Thread.sleep(sleep);
@@ -234,6 +392,10 @@ public final class ReportExecutor {
 
         if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Wait for Toast + worker ended. Kill Application ? " + reportBuilder.isEndApplication());
 
+        endApplicationIfRequested(reportBuilder);
+    }
+
+    private void endApplicationIfRequested(@NonNull ReportBuilder reportBuilder) {
         if (reportBuilder.isEndApplication()) {
             if(Debug.isDebuggerConnected()){
                 //Killing a process with a debugger attached would kill the whole application, so don't do that.
@@ -345,6 +507,17 @@ public final class ReportExecutor {
         return new File(reportLocator.getUnapprovedFolder(), fileName);
     }
 
+    /**
+     * @param reportFile File the complete report will be written to.
+     * @return File the stub of the report is written to until the complete report has been written.
+     */
+    @NonNull
+    private File getStubFile(@NonNull File reportFile) {
+        final String reportName = reportFile.getName();
+        final String stubName = reportName.substring(0, reportName.length() - ACRAConstants.REPORTFILE_EXTENSION.length()) + ACRAConstants.STUBFILE_EXTENSION;
+        return new File(reportFile.getParentFile(), stubName);
+    }
+
     /**
      * When a report can't be sent, it is saved here in a file in the root of
      * the application private directory.
@@ -359,14 +532,19 @@ public final class ReportExecutor {
      *            report data. Used to store again a report with the addition of
      *            user comment. If null, the default current crash data are
      *            used.
+     * @param sync
+     *            if the file should be forced to the storage device.
+     * @return true if the file has been written.
      */
-    private void saveCrashReportFile(@NonNull File file, @NonNull CrashReportData crashData) {
+    private boolean saveCrashReportFile(@NonNull File file, @NonNull CrashReportData crashData, boolean sync) {
         try {
             if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Writing crash report file " + file);
-            final CrashReportPersister persister = new CrashReportPersister();
-            persister.store(crashData, file);
+            final CrashReportPersister persister = new CrashReportPersister(config.reportStorageFormat(), config.reportCompressionLevel());
+            persister.store(crashData, file, sync);
+            return true;
         } catch (Exception e) {
             ACRA.log.e(ACRA.LOG_TAG, "An error occurred while writing the report file...", e);
+            return false;
         }
     }
 
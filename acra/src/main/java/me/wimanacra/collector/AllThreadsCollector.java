@@ -0,0 +1,133 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.builder.ReportBuilder;
+import me.wimanacra.model.Element;
+import me.wimanacra.model.StringElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the stacks of all threads, grouping threads with the same state and stack.
+ */
+final class AllThreadsCollector extends Collector {
+
+    AllThreadsCollector() {
+        super(ReportField.ALL_THREADS);
+    }
+
+    @NonNull
+    @Override
+    Element collect(ReportField reportField, ReportBuilder reportBuilder) {
+        final Map<Thread, StackTraceElement[]> traces = Thread.getAllStackTraces();
+        final Thread crashedThread = reportBuilder.getUncaughtExceptionThread();
+
+        // group by state and (capped) stack, thread pools produce lots of identical idle threads
+        final Map<List<Object>, Group> groups = new LinkedHashMap<List<Object>, Group>();
+        for (Map.Entry<Thread, StackTraceElement[]> entry : traces.entrySet()) {
+            final Thread thread = entry.getKey();
+            final StackTraceElement[] stack = entry.getValue();
+            final List<Object> key = new ArrayList<Object>(Math.min(stack.length, ACRAConstants.ALL_THREADS_MAX_FRAMES) + 2);
+            key.add(thread.getState());
+            key.add(stack.length);
+            key.addAll(Arrays.asList(stack).subList(0, Math.min(stack.length, ACRAConstants.ALL_THREADS_MAX_FRAMES)));
+            Group group = groups.get(key);
+            if (group == null) {
+                group = new Group(thread.getState(), stack);
+                groups.put(key, group);
+            }
+            group.threads.add(thread);
+            if (thread == crashedThread) {
+                group.crashed = true;
+            }
+        }
+
+        final List<Group> sortedGroups = new ArrayList<Group>(groups.values());
+        Collections.sort(sortedGroups, new Comparator<Group>() {
+            @Override
+            public int compare(Group lhs, Group rhs) {
+                if (lhs.crashed != rhs.crashed) {
+                    return lhs.crashed ? -1 : 1;
+                }
+                return rhs.threads.size() - lhs.threads.size();
+            }
+        });
+
+        final StringBuilder result = new StringBuilder();
+        result.append(traces.size()).append(" threads, ").append(sortedGroups.size()).append(" distinct stacks\n");
+        int written = 0;
+        for (Group group : sortedGroups) {
+            final int start = result.length();
+            group.appendTo(result);
+            if (result.length() > ACRAConstants.ALL_THREADS_MAX_LENGTH) {
+                result.setLength(start);
+                result.append("... ").append(sortedGroups.size() - written).append(" more stacks omitted\n");
+                break;
+            }
+            written++;
+        }
+        return new StringElement(result.toString());
+    }
+
+    private static final class Group {
+        private final Thread.State state;
+        private final StackTraceElement[] stack;
+        private final List<Thread> threads = new ArrayList<Thread>();
+        private boolean crashed;
+
+        Group(@Nullable Thread.State state, @NonNull StackTraceElement[] stack) {
+            this.state = state;
+            this.stack = stack;
+        }
+
+        void appendTo(@NonNull StringBuilder out) {
+            out.append('\n');
+            if (crashed) {
+                out.append("crashed ");
+            }
+            out.append(threads.size()).append(threads.size() == 1 ? " thread (" : " threads (").append(state).append("): ");
+            for (int i = 0; i < threads.size() && i < ACRAConstants.ALL_THREADS_MAX_NAMES; i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                final Thread thread = threads.get(i);
+                out.append('"').append(thread.getName()).append("\" id=").append(thread.getId());
+            }
+            if (threads.size() > ACRAConstants.ALL_THREADS_MAX_NAMES) {
+                out.append(" and ").append(threads.size() - ACRAConstants.ALL_THREADS_MAX_NAMES).append(" more");
+            }
+            out.append('\n');
+            for (int i = 0; i < stack.length && i < ACRAConstants.ALL_THREADS_MAX_FRAMES; i++) {
+                out.append("\tat ").append(stack[i]).append('\n');
+            }
+            if (stack.length > ACRAConstants.ALL_THREADS_MAX_FRAMES) {
+                out.append("\t... ").append(stack.length - ACRAConstants.ALL_THREADS_MAX_FRAMES).append(" more\n");
+            }
+        }
+    }
+}
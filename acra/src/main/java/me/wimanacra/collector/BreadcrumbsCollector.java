@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.builder.ReportBuilder;
+import me.wimanacra.model.Element;
+import me.wimanacra.model.StringElement;
+import me.wimanacra.util.BreadcrumbRingBuffer;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects the breadcrumbs left by the application, one per line in the order they were left.
+ */
+final class BreadcrumbsCollector extends Collector {
+    private final BreadcrumbRingBuffer breadcrumbs;
+
+    BreadcrumbsCollector(@NonNull BreadcrumbRingBuffer breadcrumbs) {
+        super(ReportField.BREADCRUMBS);
+        this.breadcrumbs = breadcrumbs;
+    }
+
+    @Override
+    boolean isFast() {
+        return true;
+    }
+
+    @NonNull
+    @Override
+    Element collect(ReportField reportField, ReportBuilder reportBuilder) {
+        final List<BreadcrumbRingBuffer.Breadcrumb> snapshot = breadcrumbs.snapshot();
+        if (snapshot.isEmpty()) {
+            return ACRAConstants.NOT_AVAILABLE;
+        }
+        final SimpleDateFormat format = new SimpleDateFormat(ACRAConstants.DATE_TIME_FORMAT_STRING, Locale.ENGLISH);
+        final StringBuilder result = new StringBuilder();
+        for (BreadcrumbRingBuffer.Breadcrumb breadcrumb : snapshot) {
+            result.append(format.format(breadcrumb.getTime())).append(' ').append(breadcrumb.getTag());
+            if (breadcrumb.getValue() != BreadcrumbRingBuffer.NO_VALUE) {
+                result.append(" = ").append(breadcrumb.getValue());
+            }
+            result.append('\n');
+        }
+        return new StringElement(result.toString());
+    }
+}
@@ -65,6 +65,27 @@ abstract class Collector {
         return crashReportFields.contains(collect);
     }
 
+    /**
+     * Static fields cannot change during the lifetime of the process. They are collected once
+     * in the background and their value is reused for every report.
+     *
+     * @param reportField the ReportField in question
+     * @return if the value of this field is constant for this process
+     */
+    boolean isStatic(ReportField reportField) {
+        return false;
+    }
+
+    /**
+     * Fast collectors only read state which is already in memory. They are run on the calling thread
+     * instead of the collector pool, so they neither wait behind slow collectors nor hold up a pool thread.
+     *
+     * @return if this collector finishes in negligible time
+     */
+    boolean isFast() {
+        return false;
+    }
+
     /**
      * will only be called if shouldCollect returned true for this ReportField
      *
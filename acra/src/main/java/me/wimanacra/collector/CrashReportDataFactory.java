@@ -18,21 +18,37 @@ package me.wimanacra.collector;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 
 import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
 import me.wimanacra.builder.ReportBuilder;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.model.Element;
+import me.wimanacra.util.BreadcrumbRingBuffer;
+import me.wimanacra.util.DaemonThreadFactory;
 import me.wimanacra.util.PackageManagerWrapper;
 
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Responsible for creating the CrashReportData for an Exception.
@@ -45,12 +61,28 @@ import java.util.Set;
  */
 public final class CrashReportDataFactory {
 
+    /**
+     * Deadline value for collection without a time limit.
+     */
+    public static final long NO_DEADLINE = 0;
+    private static final long COLLECTOR_KEEP_ALIVE = 10000;
+
+    /**
+     * Fields which identify a crash and are persisted before all other fields are collected.
+     */
+    private static final Set<ReportField> STUB_FIELDS = EnumSet.of(ReportField.STACK_TRACE, ReportField.STACK_TRACE_HASH, ReportField.USER_CRASH_DATE,
+            ReportField.REPORT_ID, ReportField.IS_SILENT, ReportField.APP_VERSION_CODE, ReportField.APP_VERSION_NAME);
+
     private final Context context;
     private final ACRAConfiguration config;
     private final SharedPreferences prefs;
-    private final Map<String, String> customParameters = new LinkedHashMap<String, String>();
+    private final CustomDataStore customParameters;
     private final Calendar appStartDate;
     private final Element initialConfiguration;
+    private final BreadcrumbRingBuffer breadcrumbs;
+    private final LogcatRecorder logcatRecorder;
+    private ThreadPoolExecutor collectorExecutor;
+    private volatile Map<ReportField, Element> staticData;
 
     public CrashReportDataFactory(@NonNull Context context, @NonNull ACRAConfiguration config,
                                   @NonNull SharedPreferences prefs, @NonNull Calendar appStartDate,
@@ -60,6 +92,27 @@ public final class CrashReportDataFactory {
         this.prefs = prefs;
         this.appStartDate = appStartDate;
         this.initialConfiguration = initialConfiguration;
+        this.breadcrumbs = new BreadcrumbRingBuffer(config.breadcrumbCapacity());
+        this.customParameters = new CustomDataStore(config.customDataMaxValueLength(), config.customDataMaxTotalLength());
+        this.logcatRecorder = config.logcatRingBufferSize() > 0 ? new LogcatRecorder(config) : null;
+    }
+
+    /**
+     * Starts recording logcat in the background, if {@link me.wimanacra.annotation.ReportsCrashes#logcatRingBufferSize()} is set.
+     */
+    public void startLogcatRecording() {
+        if (logcatRecorder != null) {
+            logcatRecorder.start();
+        }
+    }
+
+    /**
+     * Stops recording logcat, logcat is then read when a report is collected.
+     */
+    public void stopLogcatRecording() {
+        if (logcatRecorder != null) {
+            logcatRecorder.stop();
+        }
     }
 
     /**
@@ -107,6 +160,57 @@ public final class CrashReportDataFactory {
         return customParameters.get(key);
     }
 
+    /**
+     * Records a breadcrumb to be reported with the next report.
+     * This does not lock and, if the tag is a constant, does not allocate.
+     *
+     * @param tag   A string or enum describing what happened.
+     * @param value A number further describing the event, or {@link BreadcrumbRingBuffer#NO_VALUE}.
+     */
+    public void leaveBreadcrumb(@NonNull Object tag, long value) {
+        breadcrumbs.record(tag, value);
+    }
+
+    /**
+     * @return the current custom data, which is not affected by later changes.
+     */
+    @NonNull
+    public Map<String, String> getCustomDataSnapshot() {
+        return customParameters.snapshot();
+    }
+
+    /**
+     * @param builder ReportBuilder for whom to crete the crash report.
+     * @return the value which is reported as {@link ReportField#STACK_TRACE_HASH} for this crash.
+     */
+    @NonNull
+    public String getStackTraceHash(@NonNull ReportBuilder builder) {
+        return StacktraceCollector.getStackTraceHash(builder.getException());
+    }
+
+    /**
+     * Collects all fields which cannot change during the lifetime of the process, so that later reports can reuse them.
+     * This is expensive (reflection and binder calls), so it should not be called on the main thread.
+     */
+    public void collectStaticData() {
+        final Map<ReportField, Element> data = new EnumMap<ReportField, Element>(ReportField.class);
+        final Set<ReportField> crashReportFields = config.reportContent();
+        final ReportBuilder builder = new ReportBuilder();
+        for (Collector collector : getCollectorsOrdered(NO_DEADLINE)) {
+            for (ReportField reportField : collector.canCollect()) {
+                try {
+                    if (collector.isStatic(reportField) && collector.shouldCollect(crashReportFields, reportField, builder)) {
+                        data.put(reportField, collector.collect(reportField, builder));
+                    }
+                } catch (RuntimeException e) {
+                    ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving " + reportField.name() + " data", e);
+                }
+            }
+        }
+        staticData = data;
+        if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Collected static fields " + data.keySet());
+    }
+
     /**
      * Collects crash data.
      *
@@ -115,29 +219,103 @@ public final class CrashReportDataFactory {
      */
     @NonNull
     public CrashReportData createCrashData(@NonNull ReportBuilder builder) {
-        final CrashReportData crashReportData = new CrashReportData();
+        return createCrashData(builder, NO_DEADLINE);
+    }
+
+    /**
+     * Collects crash data, giving up on collectors which have not finished by the given deadline.
+     * Fields which were given up because of the deadline are reported as {@link ACRAConstants#OVER_BUDGET}.
+     *
+     * @param builder  ReportBuilder for whom to crete the crash report.
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) by which collection has to be done,
+     *                 or {@link #NO_DEADLINE}.
+     * @return CrashReportData identifying the current crash.
+     */
+    @NonNull
+    public CrashReportData createCrashData(@NonNull ReportBuilder builder, long deadline) {
+        return createCrashData(builder, new CrashReportData(), deadline);
+    }
+
+    /**
+     * Collects the few fields which identify a crash and are cheap to collect,
+     * so that they can be persisted before the expensive collection starts.
+     *
+     * @param builder ReportBuilder for whom to crete the crash report.
+     * @return CrashReportData containing only the stub fields.
+     * @see #createCrashData(ReportBuilder, CrashReportData, long)
+     */
+    @NonNull
+    public CrashReportData createStubData(@NonNull ReportBuilder builder) {
+        final CrashReportData stubData = new CrashReportData();
         try {
             final Set<ReportField> crashReportFields = config.reportContent();
-            final List<Collector> collectors = getCollectorsOrdered();
-
-            //this will iterate over all collectors in descending order of priority
-            for (Collector collector : collectors) {
-                //catch absolutely everything possible here so no collector obstructs the others
-                try {
-                    for (ReportField reportField : collector.canCollect()) {
-                        try {
-                            if (collector.shouldCollect(crashReportFields, reportField, builder)) {
-                                crashReportData.put(reportField, collector.collect(reportField, builder));
-                            }
-                        } catch (RuntimeException e) {
-                            ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving " + reportField.name() + " data", e);
+            final Map<ReportField, Element> staticData = this.staticData;
+            for (Collector collector : getCollectorsOrdered(NO_DEADLINE)) {
+                for (ReportField reportField : collector.canCollect()) {
+                    if (!STUB_FIELDS.contains(reportField)) {
+                        continue;
+                    }
+                    if (staticData != null && collector.isStatic(reportField)) {
+                        if (staticData.containsKey(reportField)) {
+                            stubData.put(reportField, staticData.get(reportField));
                         }
+                        continue;
                     }
-                } catch (RuntimeException e) {
-                    ACRA.log.e(ACRA.LOG_TAG, "Error in collector " + collector.getClass().getSimpleName(), e);
+                    try {
+                        if (collector.shouldCollect(crashReportFields, reportField, builder)) {
+                            stubData.put(reportField, collector.collect(reportField, builder));
+                        }
+                    } catch (RuntimeException e) {
+                        ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving " + reportField.name() + " data", e);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving stub data", e);
+        }
+        return stubData;
+    }
+
+    /**
+     * Collects crash data on top of already collected data, e.g. a stub created by {@link #createStubData(ReportBuilder)}.
+     * Fields contained in the initial data are not collected again.
+     *
+     * @param builder     ReportBuilder for whom to crete the crash report.
+     * @param initialData Data which has already been collected for this crash.
+     * @param deadline    Point in time ({@link SystemClock#elapsedRealtime()}) by which collection has to be done,
+     *                    or {@link #NO_DEADLINE}.
+     * @return CrashReportData identifying the current crash.
+     */
+    @NonNull
+    public CrashReportData createCrashData(@NonNull ReportBuilder builder, @NonNull CrashReportData initialData, long deadline) {
+        final CrashReportData crashReportData = new CrashReportData();
+        try {
+            final Set<ReportField> crashReportFields = config.reportContent();
+            final List<Collector> collectors = getCollectorsOrdered(deadline);
+
+            // reuse static fields if they have already been collected
+            final Map<ReportField, Element> staticData = this.staticData;
+            if (staticData != null) {
+                crashReportData.putAll(staticData);
+            }
+            crashReportData.putAll(initialData);
+            final Set<ReportField> skippedFields = EnumSet.noneOf(ReportField.class);
+            skippedFields.addAll(crashReportData.keySet());
+
+            // only run the collectors which have work left
+            final Iterator<Collector> iterator = collectors.iterator();
+            while (iterator.hasNext()) {
+                if (isDone(iterator.next(), skippedFields, staticData != null)) {
+                    iterator.remove();
                 }
             }
 
+            if (config.parallelCollection()) {
+                collectInParallel(collectors, crashReportFields, builder, crashReportData, skippedFields, staticData != null, deadline);
+            } else {
+                collectInSequence(collectors, crashReportFields, builder, crashReportData, skippedFields, staticData != null, deadline);
+            }
+
         } catch (RuntimeException e) {
             ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving crash data", e);
         }
@@ -145,16 +323,285 @@ public final class CrashReportDataFactory {
         return crashReportData;
     }
 
-    private List<Collector> getCollectorsOrdered() {
+    /**
+     * Runs the collectors one after another, in descending order of priority.
+     * Without a deadline they run on the calling thread. With a deadline, slow collectors run one at a time on the
+     * collector pool, so that a collector which blocks can be given up when the deadline passes.
+     */
+    private void collectInSequence(@NonNull List<Collector> collectors, @NonNull final Set<ReportField> crashReportFields,
+                                   @NonNull final ReportBuilder builder, @NonNull CrashReportData crashReportData,
+                                   @NonNull final Set<ReportField> skippedFields, final boolean skipStatic, long deadline) {
+        ThreadPoolExecutor executor = null;
+        boolean threadsLost = false;
+        for (final Collector collector : collectors) {
+            if (deadline == NO_DEADLINE) {
+                collect(collector, crashReportFields, builder, crashReportData, skippedFields, skipStatic);
+                continue;
+            }
+            final long remaining = deadline - SystemClock.elapsedRealtime();
+            if (remaining <= 0) {
+                ACRA.log.w(ACRA.LOG_TAG, "Collector " + collector.getClass().getSimpleName() + " skipped, capture budget exhausted");
+                putPlaceholder(collector, crashReportFields, crashReportData, ACRAConstants.OVER_BUDGET);
+                continue;
+            }
+            if (collector.isFast()) {
+                collect(collector, crashReportFields, builder, crashReportData, skippedFields, skipStatic);
+                continue;
+            }
+            if (executor == null) {
+                executor = getCollectorExecutor();
+            }
+            final Future<CrashReportData> future = executor.submit(new Callable<CrashReportData>() {
+                @Override
+                public CrashReportData call() {
+                    final CrashReportData partialData = new CrashReportData();
+                    collect(collector, crashReportFields, builder, partialData, skippedFields, skipStatic);
+                    return partialData;
+                }
+            });
+            try {
+                crashReportData.putAll(future.get(remaining, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                ACRA.log.w(ACRA.LOG_TAG, "Collector " + collector.getClass().getSimpleName() + " skipped, capture budget exhausted");
+                putPlaceholder(collector, crashReportFields, crashReportData, ACRAConstants.OVER_BUDGET);
+                // blocking I/O ignores the interrupt, so the thread may stay busy
+                threadsLost = true;
+            } catch (InterruptedException e) {
+                ACRA.log.w(ACRA.LOG_TAG, "Interrupted while waiting for collector " + collector.getClass().getSimpleName());
+                future.cancel(true);
+                putPlaceholder(collector, crashReportFields, crashReportData, ACRAConstants.NOT_AVAILABLE);
+                threadsLost = true;
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                ACRA.log.e(ACRA.LOG_TAG, "Error in collector " + collector.getClass().getSimpleName(), e.getCause());
+            }
+        }
+        if (threadsLost) {
+            // never hand threads which may still be stuck to the next report
+            discardCollectorExecutor(executor);
+        }
+    }
+
+    /**
+     * Runs fast collectors on the calling thread and all others on the collector pool.
+     * Each pooled collector has {@link ACRAConfiguration#collectorTimeout()} from the moment it starts running,
+     * so collectors queued behind slow ones are not penalized. All of them are bound by the deadline.
+     * Each pooled collector writes into its own CrashReportData, which is merged on the calling thread,
+     * so that a collector which overruns can be dropped without touching the report.
+     */
+    private void collectInParallel(@NonNull List<Collector> collectors, @NonNull final Set<ReportField> crashReportFields,
+                                   @NonNull final ReportBuilder builder, @NonNull CrashReportData crashReportData,
+                                   @NonNull final Set<ReportField> skippedFields, final boolean skipStatic, long deadline) {
+        final ThreadPoolExecutor executor = getCollectorExecutor();
+        final int count = collectors.size();
+        final AtomicLongArray startTimes = new AtomicLongArray(count);
+        // released whenever a pooled collector starts or finishes
+        final Semaphore events = new Semaphore(0);
+        final List<Future<CrashReportData>> futures = new ArrayList<Future<CrashReportData>>(count);
+        int pending = 0;
+        for (int i = 0; i < count; i++) {
+            final Collector collector = collectors.get(i);
+            if (collector.isFast()) {
+                futures.add(null);
+                continue;
+            }
+            final int index = i;
+            futures.add(executor.submit(new Callable<CrashReportData>() {
+                @Override
+                public CrashReportData call() {
+                    startTimes.set(index, SystemClock.elapsedRealtime());
+                    events.release();
+                    try {
+                        final CrashReportData partialData = new CrashReportData();
+                        collect(collector, crashReportFields, builder, partialData, skippedFields, skipStatic);
+                        return partialData;
+                    } finally {
+                        events.release();
+                    }
+                }
+            }));
+            pending++;
+        }
+
+        // fast collectors run while the pool is busy
+        for (Collector collector : collectors) {
+            if (collector.isFast()) {
+                collect(collector, crashReportFields, builder, crashReportData, skippedFields, skipStatic);
+            }
+        }
+
+        boolean threadsLost = false;
+        while (pending > 0) {
+            final long now = SystemClock.elapsedRealtime();
+            long nextCheck = NO_DEADLINE;
+            for (int i = 0; i < count; i++) {
+                final Future<CrashReportData> future = futures.get(i);
+                if (future == null) {
+                    continue;
+                }
+                final Collector collector = collectors.get(i);
+                if (future.isDone()) {
+                    futures.set(i, null);
+                    pending--;
+                    merge(collector, future, crashReportData);
+                    continue;
+                }
+                final long started = startTimes.get(i);
+                long limit = deadline;
+                if (started != 0 && (deadline == NO_DEADLINE || started + config.collectorTimeout() < deadline)) {
+                    limit = started + config.collectorTimeout();
+                }
+                if (limit == NO_DEADLINE) {
+                    continue;
+                }
+                if (now < limit) {
+                    nextCheck = nextCheck == NO_DEADLINE ? limit : Math.min(nextCheck, limit);
+                    continue;
+                }
+                futures.set(i, null);
+                pending--;
+                future.cancel(true);
+                if (limit == deadline) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Collector " + collector.getClass().getSimpleName() + " skipped, capture budget exhausted");
+                    putPlaceholder(collector, crashReportFields, crashReportData, ACRAConstants.OVER_BUDGET);
+                } else {
+                    ACRA.log.w(ACRA.LOG_TAG, "Collector " + collector.getClass().getSimpleName() + " did not finish within " + config.collectorTimeout() + "ms");
+                    putPlaceholder(collector, crashReportFields, crashReportData, ACRAConstants.NOT_AVAILABLE);
+                }
+                if (started != 0) {
+                    // blocking I/O ignores the interrupt, so the thread may stay busy. Queued collectors get a new one.
+                    threadsLost = true;
+                    executor.setMaximumPoolSize(executor.getMaximumPoolSize() + 1);
+                    executor.setCorePoolSize(executor.getCorePoolSize() + 1);
+                }
+            }
+            if (pending == 0) {
+                break;
+            }
+            try {
+                if (nextCheck == NO_DEADLINE) {
+                    events.acquire();
+                } else {
+                    events.tryAcquire(Math.max(nextCheck - SystemClock.elapsedRealtime(), 0), TimeUnit.MILLISECONDS);
+                }
+                events.drainPermits();
+            } catch (InterruptedException e) {
+                ACRA.log.w(ACRA.LOG_TAG, "Interrupted while waiting for collectors");
+                for (int i = 0; i < count; i++) {
+                    final Future<CrashReportData> future = futures.get(i);
+                    if (future != null) {
+                        future.cancel(true);
+                        putPlaceholder(collectors.get(i), crashReportFields, crashReportData, ACRAConstants.NOT_AVAILABLE);
+                    }
+                }
+                threadsLost = true;
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (threadsLost) {
+            // never hand threads which may still be stuck to the next report
+            discardCollectorExecutor(executor);
+        }
+    }
+
+    private static void merge(@NonNull Collector collector, @NonNull Future<CrashReportData> future, @NonNull CrashReportData crashReportData) {
+        try {
+            crashReportData.putAll(future.get());
+        } catch (InterruptedException e) {
+            // the future is done, so this does not block
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            ACRA.log.e(ACRA.LOG_TAG, "Error in collector " + collector.getClass().getSimpleName(), e.getCause());
+        }
+    }
+
+    private static void collect(@NonNull Collector collector, @NonNull Set<ReportField> crashReportFields,
+                                @NonNull ReportBuilder builder, @NonNull CrashReportData crashReportData,
+                                @NonNull Set<ReportField> skippedFields, boolean skipStatic) {
+        //catch absolutely everything possible here so no collector obstructs the others
+        try {
+            for (ReportField reportField : collector.canCollect()) {
+                try {
+                    if (!isSkipped(collector, reportField, skippedFields, skipStatic) && collector.shouldCollect(crashReportFields, reportField, builder)) {
+                        crashReportData.put(reportField, collector.collect(reportField, builder));
+                    }
+                } catch (RuntimeException e) {
+                    ACRA.log.e(ACRA.LOG_TAG, "Error while retrieving " + reportField.name() + " data", e);
+                }
+            }
+        } catch (RuntimeException e) {
+            ACRA.log.e(ACRA.LOG_TAG, "Error in collector " + collector.getClass().getSimpleName(), e);
+        }
+    }
+
+    private static boolean isSkipped(@NonNull Collector collector, @NonNull ReportField reportField, @NonNull Set<ReportField> skippedFields, boolean skipStatic) {
+        return skippedFields.contains(reportField) || (skipStatic && collector.isStatic(reportField));
+    }
+
+    private static boolean isDone(@NonNull Collector collector, @NonNull Set<ReportField> skippedFields, boolean skipStatic) {
+        for (ReportField reportField : collector.canCollect()) {
+            if (!isSkipped(collector, reportField, skippedFields, skipStatic)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putPlaceholder(@NonNull Collector collector, @NonNull Set<ReportField> crashReportFields,
+                                       @NonNull CrashReportData crashReportData, @NonNull Element placeholder) {
+        for (ReportField reportField : collector.canCollect()) {
+            if (crashReportFields.contains(reportField) && !crashReportData.containsKey(reportField)) {
+                crashReportData.put(reportField, placeholder);
+            }
+        }
+    }
+
+    @NonNull
+    private synchronized ThreadPoolExecutor getCollectorExecutor() {
+        if (collectorExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(ACRAConstants.COLLECTOR_POOL_SIZE, ACRAConstants.COLLECTOR_POOL_SIZE,
+                    COLLECTOR_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ACRA-collector"));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+                executor.allowCoreThreadTimeOut(true);
+            }
+            collectorExecutor = executor;
+        }
+        return collectorExecutor;
+    }
+
+    /**
+     * Lets the threads of the given pool end once they are done, and creates a new pool for the next report.
+     */
+    private synchronized void discardCollectorExecutor(@NonNull ThreadPoolExecutor executor) {
+        if (collectorExecutor == executor) {
+            collectorExecutor = null;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) by which collection has to be done,
+     *                 or {@link #NO_DEADLINE}.
+     */
+    private List<Collector> getCollectorsOrdered(long deadline) {
+        // output of child processes (logcat, dumpsys) is read within one shared time budget,
+        // but only if a time limit has been asked for. Otherwise the reads are not bounded.
+        long readDeadline = deadline;
+        if (config.parallelCollection() || config.nonBlockingReadForLogcat()) {
+            final long timeoutEnd = SystemClock.elapsedRealtime() + config.collectorTimeout();
+            readDeadline = deadline == NO_DEADLINE ? timeoutEnd : Math.min(timeoutEnd, deadline);
+        }
         List<Collector> collectors = new ArrayList<Collector>();
         PackageManagerWrapper pm = new PackageManagerWrapper(context);
-        collectors.add(new LogCatCollector(config, pm));
+        collectors.add(new LogCatCollector(config, pm, logcatRecorder, readDeadline));
         collectors.add(new DropBoxCollector(context, config, pm));
         collectors.add(new StacktraceCollector());
         collectors.add(new TimeCollector(appStartDate));
         collectors.add(new SimpleValuesCollector(context));
         collectors.add(new ConfigurationCollector(context, initialConfiguration));
-        collectors.add(new MemoryInfoCollector());
+        collectors.add(new MemoryInfoCollector(readDeadline));
         collectors.add(new ReflectionCollector(context, config));
         collectors.add(new DisplayManagerCollector(context));
         collectors.add(new CustomDataCollector(customParameters));
@@ -166,6 +613,9 @@ public final class CrashReportDataFactory {
         collectors.add(new LogFileCollector(context, config));
         collectors.add(new MediaCodecListCollector());
         collectors.add(new ThreadCollector());
+        collectors.add(new AllThreadsCollector());
+        collectors.add(new ProcessResourcesCollector());
+        collectors.add(new BreadcrumbsCollector(breadcrumbs));
         return collectors;
     }
 }
\ No newline at end of file
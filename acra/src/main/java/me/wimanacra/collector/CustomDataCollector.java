@@ -33,28 +33,36 @@ import java.util.Map;
  * @since 4.9.1
  */
 final class CustomDataCollector extends Collector {
-    private final Map<String, String> customParameters;
+    private final CustomDataStore customParameters;
 
-    CustomDataCollector(Map<String, String> customParameters){
+    CustomDataCollector(CustomDataStore customParameters){
         super(ReportField.CUSTOM_DATA);
         this.customParameters = customParameters;
     }
+
+    @Override
+    boolean isFast() {
+        return true;
+    }
+
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
-        return createCustomInfoElement(reportBuilder.getCustomData());
+        return createCustomInfoElement(reportBuilder.getCustomDataSnapshot(), reportBuilder.getCustomData());
     }
 
 
     /**
      * Generates the Element which is posted in the single custom data field
      *
+     * @param snapshot         global custom data captured when the error occurred, if any. Otherwise the current global custom data is used.
+     * @param reportCustomData custom data of this report, which takes precedence.
      * @return An Element with  key-value-pairs for the supplied custom data.
      */
     @NonNull
-    private Element createCustomInfoElement(@Nullable Map<String, String> reportCustomData) {
-        Map<String, String> params = customParameters;
-        if (reportCustomData != null) {
+    private Element createCustomInfoElement(@Nullable Map<String, String> snapshot, @Nullable Map<String, String> reportCustomData) {
+        Map<String, String> params = snapshot != null ? snapshot : customParameters.snapshot();
+        if (reportCustomData != null && !reportCustomData.isEmpty()) {
             params = new HashMap<String, String>(params);
             params.putAll(reportCustomData);
         }
@@ -0,0 +1,185 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Custom data which can be modified from any thread while a report is being collected.
+ * <p>
+ * The data is held in a {@link ConcurrentHashMap} and entries are replaced by compare and set, so writers to different
+ * keys do not contend and neither writers nor {@link #snapshot()} ever block each other. The total length is reserved
+ * with compare and set before an entry is replaced, so the limit holds under concurrent modification. A snapshot
+ * holds for every key a value it had while the snapshot was taken, modifications made meanwhile may or may not be
+ * included. Keys keep the order in which they were first added.
+ * </p>
+ * <p>
+ * Lengths are counted in characters (UTF-16 code units), not bytes. Values can be truncated to a maximum length and
+ * modifications which would exceed a maximum total length are rejected. A limit of 0 or less means no limit.
+ * </p>
+ */
+final class CustomDataStore {
+
+    private static final Comparator<Map.Entry<String, Entry>> BY_SEQUENCE = new Comparator<Map.Entry<String, Entry>>() {
+        @Override
+        public int compare(Map.Entry<String, Entry> lhs, Map.Entry<String, Entry> rhs) {
+            final long l = lhs.getValue().sequence;
+            final long r = rhs.getValue().sequence;
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    private final int maxValueLength;
+    private final int maxTotalLength;
+    private final ConcurrentMap<String, Entry> data = new ConcurrentHashMap<String, Entry>();
+    private final AtomicInteger length = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param maxValueLength maximum number of characters of a single value, or 0 for no limit.
+     * @param maxTotalLength maximum number of characters of all keys and values, or 0 for no limit.
+     */
+    CustomDataStore(int maxValueLength, int maxTotalLength) {
+        this.maxValueLength = maxValueLength;
+        this.maxTotalLength = maxTotalLength;
+    }
+
+    /**
+     * @return The previous value for this key if there was one, or null. If the value was rejected, the current value.
+     */
+    @Nullable
+    String put(@NonNull String key, @Nullable String value) {
+        if (maxValueLength > 0 && value != null && value.length() > maxValueLength) {
+            ACRA.log.w(ACRA.LOG_TAG, "Custom data " + key + " truncated to " + maxValueLength + " characters");
+            value = value.substring(0, maxValueLength);
+        }
+        while (true) {
+            final Entry previous = data.get(key);
+            final int delta = length(key, value) - (previous == null ? 0 : length(key, previous.value));
+            if (delta > 0 && !reserve(delta)) {
+                ACRA.log.w(ACRA.LOG_TAG, "Custom data " + key + " rejected, total length would exceed " + maxTotalLength + " characters");
+                return previous == null ? null : previous.value;
+            }
+            final boolean replaced;
+            if (previous == null) {
+                replaced = data.putIfAbsent(key, new Entry(value, sequence.getAndIncrement())) == null;
+            } else {
+                replaced = data.replace(key, previous, new Entry(value, previous.sequence));
+            }
+            if (replaced) {
+                if (delta < 0) {
+                    length.addAndGet(delta);
+                }
+                return previous == null ? null : previous.value;
+            }
+            // another thread modified the key meanwhile, release the reservation and retry against its value
+            if (delta > 0) {
+                length.addAndGet(-delta);
+            }
+        }
+    }
+
+    @Nullable
+    String remove(@NonNull String key) {
+        while (true) {
+            final Entry previous = data.get(key);
+            if (previous == null) {
+                return null;
+            }
+            if (data.remove(key, previous)) {
+                length.addAndGet(-length(key, previous.value));
+                return previous.value;
+            }
+        }
+    }
+
+    void clear() {
+        for (String key : data.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Nullable
+    String get(@NonNull String key) {
+        final Entry entry = data.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * @return a copy of the custom data, taken without blocking modifications.
+     */
+    @NonNull
+    Map<String, String> snapshot() {
+        final List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(data.entrySet());
+        Collections.sort(entries, BY_SEQUENCE);
+        final Map<String, String> result = new LinkedHashMap<String, String>(entries.size() * 2);
+        for (Map.Entry<String, Entry> entry : entries) {
+            result.put(entry.getKey(), entry.getValue().value);
+        }
+        return result;
+    }
+
+    /**
+     * Adds to the total length if it stays within the limit.
+     *
+     * @return if the length was added.
+     */
+    private boolean reserve(int delta) {
+        while (true) {
+            final int current = length.get();
+            final int updated = current + delta;
+            if (maxTotalLength > 0 && updated > maxTotalLength) {
+                return false;
+            }
+            if (length.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    private static int length(@NonNull String key, @Nullable String value) {
+        return key.length() + (value == null ? 0 : value.length());
+    }
+
+    /**
+     * A value and the position of its key. Entries are compared by identity, so a replace only succeeds against the
+     * exact entry it was computed from.
+     */
+    private static final class Entry {
+        @Nullable
+        final String value;
+        final long sequence;
+
+        Entry(@Nullable String value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -39,6 +39,11 @@ final class DeviceFeaturesCollector extends Collector {
         this.context = context;
     }
 
+    @Override
+    boolean isStatic(ReportField reportField) {
+        return true;
+    }
+
     /**
      * collects device features
      *
@@ -28,15 +28,23 @@ import me.wimanacra.builder.ReportBuilder;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.model.ComplexElement;
 import me.wimanacra.model.Element;
+import me.wimanacra.util.DaemonThreadFactory;
 import me.wimanacra.util.PackageManagerWrapper;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Collects data from the {@link DropBoxManager}. A
@@ -65,11 +73,15 @@ final class DropBoxCollector extends Collector {
             "SYSTEM_RECOVERY_LOG", "SYSTEM_BOOT", "SYSTEM_LAST_KMSG", "APANIC_CONSOLE", "APANIC_THREADS",
             "SYSTEM_RESTART", "SYSTEM_TOMBSTONE", "data_app_strictmode"};
 
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss", Locale.getDefault()); //iCal format (used for backwards compatibility)
+    private static final String DATE_FORMAT = "yyyyMMdd'T'HHmmss"; //iCal format (used for backwards compatibility)
+    private static final long MINUTE = 60 * 1000;
+    private static final long KEEP_ALIVE = 10000;
+    private static ExecutorService executor;
 
     /**
      * Read latest messages contained in the DropBox for system related tags and
-     * optional developer-set tags.
+     * optional developer-set tags. Tags are read in parallel, the number of entries
+     * per tag and the total length of all texts are limited.
      *
      * @return An Element listing messages retrieved.
      */
@@ -78,11 +90,7 @@ final class DropBoxCollector extends Collector {
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
         try {
             final DropBoxManager dropbox = (DropBoxManager) context.getSystemService(Context.DROPBOX_SERVICE);
-
-            final Calendar calendar = Calendar.getInstance();
-            calendar.roll(Calendar.MINUTE, -config.dropboxCollectionMinutes());
-            final long time = calendar.getTimeInMillis();
-            dateFormat.format(calendar.getTime());
+            final long time = System.currentTimeMillis() - config.dropboxCollectionMinutes() * MINUTE;
 
             final List<String> tags = new ArrayList<String>();
             if (config.includeDropBoxSystemTags()) {
@@ -97,31 +105,37 @@ final class DropBoxCollector extends Collector {
                 return ACRAConstants.NOT_AVAILABLE;
             }
 
-            final ComplexElement dropboxContent = new ComplexElement();
-            for (String tag : tags) {
-                final StringBuilder builder = new StringBuilder();
-                DropBoxManager.Entry entry = dropbox.getNextEntry(tag, time);
-                if (entry == null) {
-                    builder.append("Nothing.").append('\n');
-                    continue;
+            final AtomicInteger remainingLength = new AtomicInteger(ACRAConstants.DROPBOX_MAX_TOTAL_LENGTH);
+            final ExecutorService executor = getExecutor();
+            final List<Future<String>> results = new ArrayList<Future<String>>(tags.size());
+            try {
+                for (final String tag : tags) {
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return collectTag(dropbox, tag, time, remainingLength);
+                        }
+                    }));
                 }
-                while (entry != null) {
-                    final long msec = entry.getTimeMillis();
-                    calendar.setTimeInMillis(msec);
-                    builder.append('@').append(dateFormat.format(calendar.getTime())).append('\n');
-                    final String text = entry.getText(500);
-                    if (text != null) {
-                        builder.append("Text: ").append(text).append('\n');
-                    } else {
-                        builder.append("Not Text!").append('\n');
+                final ComplexElement dropboxContent = new ComplexElement();
+                for (int i = 0; i < tags.size(); i++) {
+                    try {
+                        dropboxContent.put(tags.get(i), results.get(i).get());
+                    } catch (ExecutionException e) {
+                        ACRA.log.w(ACRA.LOG_TAG, "Could not read DropBox tag " + tags.get(i), e.getCause());
                     }
-                    entry.close();
-                    entry = dropbox.getNextEntry(tag, msec);
                 }
-                dropboxContent.put(tag, builder.toString());
+                return dropboxContent;
+            } finally {
+                // the pool is shared, only the tags of this collection are stopped
+                for (Future<String> result : results) {
+                    result.cancel(true);
+                }
             }
-            return dropboxContent;
 
+        } catch (InterruptedException e) {
+            if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Interrupted while reading DropBox");
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "DropBoxManager not available.");
         }
@@ -129,6 +143,82 @@ final class DropBoxCollector extends Collector {
         return ACRAConstants.NOT_AVAILABLE;
     }
 
+    /**
+     * Reads the entries of one tag, at most {@link ACRAConstants#DROPBOX_MAX_ENTRIES_PER_TAG}.
+     *
+     * @param remainingLength text length which may still be read for all tags, reduced by the length of the texts read.
+     * @return the entries, one date and text per entry.
+     */
+    @NonNull
+    private static String collectTag(@NonNull DropBoxManager dropbox, @NonNull String tag, long time, @NonNull AtomicInteger remainingLength) {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
+        final StringBuilder builder = new StringBuilder();
+        int count = 0;
+        long entryTime = time;
+        for (DropBoxManager.Entry entry = dropbox.getNextEntry(tag, entryTime); entry != null; entry = dropbox.getNextEntry(tag, entryTime)) {
+            try {
+                if (count == ACRAConstants.DROPBOX_MAX_ENTRIES_PER_TAG) {
+                    builder.append("More entries omitted.").append('\n');
+                    break;
+                }
+                count++;
+                entryTime = entry.getTimeMillis();
+                builder.append('@').append(dateFormat.format(entryTime)).append('\n');
+                final String text = entry.getText(ACRAConstants.DROPBOX_MAX_TEXT_LENGTH);
+                if (text == null) {
+                    builder.append("Not Text!").append('\n');
+                    continue;
+                }
+                if (text.length() == 0) {
+                    builder.append("Text: ").append('\n');
+                    continue;
+                }
+                final int length = reserve(remainingLength, text.length());
+                if (length == 0) {
+                    builder.append("Text omitted, DropBox size limit reached.").append('\n');
+                    break;
+                }
+                builder.append("Text: ").append(text, 0, length).append('\n');
+            } finally {
+                entry.close();
+            }
+        }
+        if (count == 0) {
+            return "Nothing.\n";
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param length the requested length, greater than 0.
+     * @return the part of the requested length which is still available, 0 if the limit has been reached.
+     */
+    private static int reserve(@NonNull AtomicInteger remainingLength, int length) {
+        while (true) {
+            final int remaining = remainingLength.get();
+            final int reserved = Math.min(remaining, length);
+            if (reserved <= 0 || remainingLength.compareAndSet(remaining, remaining - reserved)) {
+                return Math.max(reserved, 0);
+            }
+        }
+    }
+
+    /**
+     * @return the pool shared by all collections. Its threads stop when idle.
+     */
+    @NonNull
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(ACRAConstants.DROPBOX_POOL_SIZE, ACRAConstants.DROPBOX_POOL_SIZE,
+                    KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ACRA-dropbox"));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+                pool.allowCoreThreadTimeOut(true);
+            }
+            executor = pool;
+        }
+        return executor;
+    }
+
     @Override
     boolean shouldCollect(Set<ReportField> crashReportFields, ReportField collect, ReportBuilder reportBuilder) {
         return super.shouldCollect(crashReportFields, collect, reportBuilder) && (pm.hasPermission(Manifest.permission.READ_LOGS) || Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
@@ -20,8 +20,6 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import com.android.internal.util.Predicate;
-
 import me.wimanacra.ACRA;
 import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
@@ -34,9 +32,10 @@ import me.wimanacra.util.IOUtils;
 import me.wimanacra.util.PackageManagerWrapper;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -49,68 +48,84 @@ final class LogCatCollector extends Collector {
 
     private final ACRAConfiguration config;
     private final PackageManagerWrapper pm;
+    private final LogcatRecorder recorder;
+    private final long readDeadline;
+    private Map<ReportField, Element> collected;
 
-    LogCatCollector(ACRAConfiguration config, PackageManagerWrapper pm) {
+    /**
+     * @param readDeadline Point in time ({@link android.os.SystemClock#elapsedRealtime()}) at which logcat output is given up,
+     *                     if {@link ReportsCrashes#nonBlockingReadForLogcat()} is set.
+     */
+    LogCatCollector(ACRAConfiguration config, PackageManagerWrapper pm, @Nullable LogcatRecorder recorder, long readDeadline) {
         super(ReportField.LOGCAT, ReportField.EVENTSLOG, ReportField.RADIOLOG);
         this.config = config;
         this.pm = pm;
+        this.recorder = recorder;
+        this.readDeadline = readDeadline;
     }
 
     /**
-     * Executes the logcat command with arguments taken from
-     * {@link ReportsCrashes#logcatArguments()}
+     * Executes the logcat commands for all configured buffers with arguments taken from
+     * {@link ReportsCrashes#logcatArguments()}.
+     * All logcat processes are started before their output is read, and the outputs are read concurrently,
+     * so collecting all buffers takes as long as the slowest buffer instead of the sum of all.
      *
-     * @param bufferName The name of the buffer to be read: "main" (default), "radio" or "events".
-     * @return A {@link String} containing the latest lines of the output.
+     * @return The latest lines of the output of each buffer.
      * Default is 100 lines, use "-t", "300" in
      * {@link ReportsCrashes#logcatArguments()} if you want 300 lines.
      * You should be aware that increasing this value causes a longer
      * report generation time and a bigger footprint on the device data
      * plan consumption.
      */
-    private Element collectLogCat(@Nullable String bufferName) {
+    @NonNull
+    private Map<ReportField, Element> collectLogCats(@NonNull ReportBuilder reportBuilder) {
         final int myPid = android.os.Process.myPid();
         final String myPidStr = config.logcatFilterByPid() && myPid > 0 ? Integer.toString(myPid) + "):" : null;
+        final int tailCount = getTailCount(config.logcatArguments());
 
-        final List<String> commandLine = new ArrayList<String>();
-        commandLine.add("logcat");
-        if (bufferName != null) {
-            commandLine.add("-b");
-            commandLine.add(bufferName);
-        }
-
-        final int tailCount;
-        final List<String> logcatArgumentsList = config.logcatArguments();
-
-        final int tailIndex = logcatArgumentsList.indexOf("-t");
-        if (tailIndex > -1 && tailIndex < logcatArgumentsList.size()) {
-            tailCount = Integer.parseInt(logcatArgumentsList.get(tailIndex + 1));
-        } else {
-            tailCount = -1;
-        }
-
-        Element logcat;
-        commandLine.addAll(logcatArgumentsList);
-
+        final Map<ReportField, Element> result = new EnumMap<ReportField, Element>(ReportField.class);
+        final List<Process> processes = new ArrayList<Process>();
+        final Map<ReportField, IOUtils.PendingRead> reads = new EnumMap<ReportField, IOUtils.PendingRead>(ReportField.class);
         try {
-            final Process process =  new ProcessBuilder().command(commandLine).redirectErrorStream(true).start();
+            for (ReportField reportField : canCollect()) {
+                if (!shouldCollect(config.reportContent(), reportField, reportBuilder)) {
+                    continue;
+                }
+                if (recorder != null) {
+                    final String recorded = recorder.tail(reportField, tailCount);
+                    if (recorded != null) {
+                        result.put(reportField, new StringElement(recorded));
+                        continue;
+                    }
+                }
+                try {
+                    final Process process = new ProcessBuilder().command(getCommandLine(getBufferName(reportField), config.logcatArguments()))
+                            .redirectErrorStream(true).start();
+                    processes.add(process);
+                    reads.put(reportField, IOUtils.readInBackground(process.getInputStream(), myPidStr, tailCount));
+                } catch (IOException e) {
+                    ACRA.log.e(ACRA.LOG_TAG, "LogCatCollector.collectLogCats could not start logcat for " + reportField, e);
+                    result.put(reportField, ACRAConstants.NOT_AVAILABLE);
+                }
+            }
 
             if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Retrieving logcat output...");
 
-            logcat = new StringElement(streamToString(process.getInputStream(), new Predicate<String>() {
-                @Override
-                public boolean apply(String s) {
-                    return myPidStr == null || s.contains(myPidStr);
+            for (Map.Entry<ReportField, IOUtils.PendingRead> read : reads.entrySet()) {
+                try {
+                    final String logcat = config.nonBlockingReadForLogcat() ? read.getValue().get(readDeadline) : read.getValue().get();
+                    result.put(read.getKey(), new StringElement(logcat));
+                } catch (IOException e) {
+                    ACRA.log.e(ACRA.LOG_TAG, "LogCatCollector.collectLogCats could not retrieve data for " + read.getKey(), e);
+                    result.put(read.getKey(), ACRAConstants.NOT_AVAILABLE);
                 }
-            }, tailCount));
-            process.destroy();
-
-        } catch (IOException e) {
-            ACRA.log.e(ACRA.LOG_TAG, "LogCatCollector.collectLogCat could not retrieve data.", e);
-            logcat = ACRAConstants.NOT_AVAILABLE;
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
         }
-
-        return logcat;
+        return result;
     }
 
     @Override
@@ -123,37 +138,50 @@ final class LogCatCollector extends Collector {
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
-        String bufferName = null;
+        // all buffers are collected at once on the first call
+        if (collected == null) {
+            collected = collectLogCats(reportBuilder);
+        }
+        final Element element = collected.get(reportField);
+        return element != null ? element : ACRAConstants.NOT_AVAILABLE;
+    }
+
+    /**
+     * @param reportField one of the logcat fields.
+     * @return The name of the logcat buffer of this field, or null for the default buffers.
+     */
+    @Nullable
+    static String getBufferName(@NonNull ReportField reportField) {
         switch (reportField) {
-            case LOGCAT:
-                bufferName = null;
-                break;
             case EVENTSLOG:
-                bufferName = "events";
-                break;
+                return "events";
             case RADIOLOG:
-                bufferName = "radio";
-                break;
+                return "radio";
+            default:
+                return null;
+        }
+    }
+
+    @NonNull
+    static List<String> getCommandLine(@Nullable String bufferName, @NonNull List<String> arguments) {
+        final List<String> commandLine = new ArrayList<String>();
+        commandLine.add("logcat");
+        if (bufferName != null) {
+            commandLine.add("-b");
+            commandLine.add(bufferName);
         }
-        return collectLogCat(bufferName);
+        commandLine.addAll(arguments);
+        return commandLine;
     }
 
     /**
-     * Reads an InputStream into a string in an non blocking way for current thread
-     * It has a default timeout of 3 seconds.
-     *
-     * @param input  the stream
-     * @param filter should return false for lines which should be excluded
-     * @param limit  the maximum number of lines to read (the last x lines are kept)
-     * @return the String that was read.
-     * @throws IOException if the stream cannot be read.
+     * @return the number of lines requested with "-t" in the logcat arguments, or -1 for all lines.
      */
-    @NonNull
-    private String streamToString(@NonNull InputStream input, Predicate<String> filter, int limit) throws IOException {
-        if (config.nonBlockingReadForLogcat()) {
-            return IOUtils.streamToStringNonBlockingRead(input, filter, limit);
-        } else {
-            return IOUtils.streamToString(input, filter, limit);
+    private static int getTailCount(@NonNull List<String> arguments) {
+        final int tailIndex = arguments.indexOf("-t");
+        if (tailIndex > -1 && tailIndex < arguments.size()) {
+            return Integer.parseInt(arguments.get(tailIndex + 1));
         }
+        return -1;
     }
 }
@@ -25,16 +25,16 @@ import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
 import me.wimanacra.builder.ReportBuilder;
 import me.wimanacra.config.ACRAConfiguration;
-import me.wimanacra.file.Directory;
 import me.wimanacra.model.Element;
 import me.wimanacra.model.StringElement;
 import me.wimanacra.util.IOUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Collects the N last lines of a text stream. Use this collector if your
@@ -56,31 +56,50 @@ final class LogFileCollector extends Collector {
      * Reads the last lines of a custom log file. The file name is assumed as
      * located in the {@link Application#getFilesDir()} directory if it does not
      * contain any path separator.
+     * <p>
+     * The file is read backwards from its end, so only the requested lines are read.
+     * If it has less lines than requested, the rotated files (file.1, file.2, ...) are read as well.
+     * </p>
      *
      * @return An Element containing all of the requested lines.
      */
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
+        final File file = config.applicationLogFileDir().getFile(context, config.applicationLogFile());
+        final int limit = config.applicationLogFileLines();
+        if (!canRead(file)) {
+            return new StringElement("");
+        }
+        final LinkedList<Tail> tails = new LinkedList<Tail>();
         try {
-            return new StringElement(IOUtils.streamToString(
-                    getStream(config.applicationLogFileDir(), config.applicationLogFile()),
-                    config.applicationLogFileLines()));
+            int remaining = limit;
+            File current = file;
+            for (int rotation = 1; current.isFile() && current.canRead(); rotation++) {
+                final Tail tail = readTail(current, remaining);
+                if (tail.lines > 0) {
+                    tails.addFirst(tail);
+                }
+                remaining -= tail.lines;
+                if (limit < 0 || remaining <= 0) {
+                    break;
+                }
+                current = new File(file.getPath() + "." + rotation);
+            }
+            return new StringElement(join(tails));
         } catch (IOException e) {
+            ACRA.log.e(ACRA.LOG_TAG, "Could not read log file '" + file.getPath() + "'", e);
             return ACRAConstants.NOT_AVAILABLE;
         }
     }
 
     /**
-     * get the application log file location and open it
+     * Checks whether the application log file can be read.
      *
-     * @param directory the base directory for the file path
-     * @param fileName the name of the file
-     * @return a stream to the file or an empty stream if the file was not found
+     * @param file the application log file
+     * @return true if the file exists and can be read
      */
-    @NonNull
-    private InputStream getStream(@NonNull Directory directory, @NonNull String fileName) {
-        final File file = directory.getFile(context, fileName);
+    private static boolean canRead(@NonNull File file) {
         if (!file.exists()) {
             if (ACRA.DEV_LOGGING)
                 ACRA.log.d(ACRA.LOG_TAG, "Log file '" + file.getPath() + "' does not exist");
@@ -89,12 +108,117 @@ final class LogFileCollector extends Collector {
         } else if (!file.canRead()) {
             ACRA.log.e(ACRA.LOG_TAG, "Log file '" + file.getPath() + "' can't be read");
         } else {
-            try {
-                return new FileInputStream(file);
-            } catch (IOException e) {
-                ACRA.log.e(ACRA.LOG_TAG, "Could not open stream for log file '" + file.getPath() + "'");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the last lines of a file by scanning backwards from its end.
+     *
+     * @param file  the file to read
+     * @param limit the maximum number of lines to read, or a negative value to read all lines
+     * @return the last lines of the file
+     * @throws IOException if the file could not be read
+     */
+    @NonNull
+    private static Tail readTail(@NonNull File file, int limit) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            long end = randomAccessFile.length();
+            if (end > 0) {
+                // a line terminator at the end of the file does not start another line
+                randomAccessFile.seek(end - 1);
+                if (randomAccessFile.read() == '\n') {
+                    end--;
+                }
+            }
+            if (end == 0 || limit == 0) {
+                return new Tail(new byte[0], 0, 0);
+            }
+
+            long start = 0;
+            int lines = 1;
+            if (limit > 0) {
+                final byte[] buffer = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
+                long position = end;
+                scan:
+                while (position > 0) {
+                    final int count = (int) Math.min(buffer.length, position);
+                    position -= count;
+                    randomAccessFile.seek(position);
+                    randomAccessFile.readFully(buffer, 0, count);
+                    for (int i = count - 1; i >= 0; i--) {
+                        if (buffer[i] == '\n') {
+                            if (lines == limit) {
+                                start = position + i + 1;
+                                break scan;
+                            }
+                            lines++;
+                        }
+                    }
+                }
+            }
+
+            final byte[] bytes = new byte[(int) (end - start)];
+            randomAccessFile.seek(start);
+            randomAccessFile.readFully(bytes);
+            // drop carriage returns of \r\n line terminators
+            int length = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\r' || (i + 1 < bytes.length && bytes[i + 1] != '\n')) {
+                    bytes[length++] = bytes[i];
+                }
+            }
+            if (limit < 0) {
+                lines = 0;
+                for (int i = 0; i < length; i++) {
+                    if (bytes[i] == '\n') {
+                        lines++;
+                    }
+                }
+                lines++;
             }
+            return new Tail(bytes, length, lines);
+        } finally {
+            IOUtils.safeClose(randomAccessFile);
+        }
+    }
+
+    /**
+     * @param tails tails of the log files, oldest first
+     * @return all lines of the tails, separated by line feeds
+     */
+    @NonNull
+    private static String join(@NonNull List<Tail> tails) throws UnsupportedEncodingException {
+        if (tails.isEmpty()) {
+            return "";
+        }
+        int length = tails.size() - 1;
+        for (Tail tail : tails) {
+            length += tail.length;
+        }
+        final byte[] result = new byte[length];
+        int position = 0;
+        for (Tail tail : tails) {
+            if (position > 0) {
+                result[position++] = '\n';
+            }
+            System.arraycopy(tail.bytes, 0, result, position, tail.length);
+            position += tail.length;
+        }
+        return new String(result, ACRAConstants.UTF8);
+    }
+
+    private static final class Tail {
+        private final byte[] bytes;
+        private final int length;
+        private final int lines;
+
+        Tail(@NonNull byte[] bytes, int length, int lines) {
+            this.bytes = bytes;
+            this.length = length;
+            this.lines = lines;
         }
-        return new ByteArrayInputStream(new byte[0]);
     }
 }
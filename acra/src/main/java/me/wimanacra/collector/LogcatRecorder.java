@@ -0,0 +1,320 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.config.ACRAConfiguration;
+import me.wimanacra.util.DaemonThreadFactory;
+import me.wimanacra.util.IOUtils;
+import me.wimanacra.util.LineRingBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Continuously reads logcat in the background into in-memory buffers, so logcat does not have to be forked at crash time.
+ * <p>
+ * There is a single long running logcat process and reader thread for all configured logcat fields.
+ * If more than one field is recorded, logcat reads all their buffers and prints a divider line whenever it switches
+ * buffers, which tells the reader which field the following lines belong to. Dividers are only available since
+ * Lollipop, on older versions only one field is recorded and the others are still collected by forking logcat.
+ * Lines are filtered by pid (if configured) on the raw bytes and appended to a {@link LineRingBuffer},
+ * so reading does not allocate.
+ * </p>
+ */
+final class LogcatRecorder {
+
+    /**
+     * Logcat line length limit, longer lines are truncated.
+     */
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    /**
+     * Start of the line logcat prints when it switches buffers, followed by "beginning of" or "switch to" and the buffer.
+     */
+    private static final byte[] DIVIDER = toAscii("--------- ");
+
+    /**
+     * logcat arguments which make logcat exit or which would clear the log.
+     */
+    private static final List<String> ONE_SHOT_ARGUMENTS = Arrays.asList("-d", "-c", "-g");
+    private static final List<String> ONE_SHOT_ARGUMENTS_WITH_VALUE = Arrays.asList("-t", "-T");
+
+    private final ACRAConfiguration config;
+    private final List<ReportField> fields = new ArrayList<ReportField>();
+    private volatile Reader reader;
+
+    LogcatRecorder(@NonNull ACRAConfiguration config) {
+        this.config = config;
+        for (ReportField field : new ReportField[]{ReportField.LOGCAT, ReportField.EVENTSLOG, ReportField.RADIOLOG}) {
+            if (config.reportContent().contains(field)) {
+                fields.add(field);
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts reading logcat in a daemon thread, unless it is already being read.
+     */
+    synchronized void start() {
+        if (fields.isEmpty() || reader != null) {
+            return;
+        }
+        final int lines = Math.max(1, config.logcatRingBufferSize() / ACRAConstants.LOGCAT_RING_BUFFER_LINE_LENGTH);
+        final Map<ReportField, Recording> recordings = new EnumMap<ReportField, Recording>(ReportField.class);
+        for (ReportField field : fields) {
+            recordings.put(field, new Recording(new LineRingBuffer(config.logcatRingBufferSize(), lines)));
+        }
+        // each reader records into its own buffers, so a stopped reader which has not ended yet cannot disturb a new one
+        reader = new Reader(recordings);
+        reader.thread = new DaemonThreadFactory("ACRA-logcat", Thread.MIN_PRIORITY).newThread(reader);
+        reader.thread.start();
+    }
+
+    /**
+     * Stops reading logcat and drops the recorded lines. Until recording is started again, logcat is read when a report is collected.
+     */
+    synchronized void stop() {
+        if (reader != null) {
+            reader.stop();
+            reader = null;
+        }
+    }
+
+    /**
+     * @param field    a logcat field.
+     * @param maxLines maximum number of lines, or a negative value for all recorded lines.
+     * @return the latest recorded lines, or null if this field is not being recorded (yet).
+     */
+    @Nullable
+    String tail(@NonNull ReportField field, int maxLines) {
+        final Reader current = reader;
+        if (current == null || !current.active) {
+            return null;
+        }
+        final Recording recording = current.recordings.get(field);
+        if (recording == null || !recording.received) {
+            return null;
+        }
+        return recording.lines.tail(maxLines);
+    }
+
+    /**
+     * @return the logcat command line which reads the buffers of all recorded fields.
+     */
+    @NonNull
+    private List<String> getCommandLine() {
+        final List<String> commandLine = new ArrayList<String>();
+        commandLine.add("logcat");
+        if (fields.size() > 1) {
+            commandLine.add("-D");
+            for (ReportField field : fields) {
+                final String bufferName = LogCatCollector.getBufferName(field);
+                if (bufferName == null) {
+                    commandLine.add("-b");
+                    commandLine.add("main");
+                    commandLine.add("-b");
+                    commandLine.add("system");
+                } else {
+                    commandLine.add("-b");
+                    commandLine.add(bufferName);
+                }
+            }
+        } else {
+            final String bufferName = LogCatCollector.getBufferName(fields.get(0));
+            if (bufferName != null) {
+                commandLine.add("-b");
+                commandLine.add(bufferName);
+            }
+        }
+        final List<String> configured = config.logcatArguments();
+        for (int i = 0; i < configured.size(); i++) {
+            final String argument = configured.get(i);
+            if (ONE_SHOT_ARGUMENTS_WITH_VALUE.contains(argument)) {
+                i++;
+            } else if (!ONE_SHOT_ARGUMENTS.contains(argument)) {
+                commandLine.add(argument);
+            }
+        }
+        return commandLine;
+    }
+
+    @Nullable
+    private byte[] getPidFilter() {
+        final int myPid = android.os.Process.myPid();
+        if (!config.logcatFilterByPid() || myPid <= 0) {
+            return null;
+        }
+        return toAscii(Integer.toString(myPid) + "):");
+    }
+
+    /**
+     * @return the recording of the buffer named at the end of a divider line (e.g. "main" or "/dev/log/main"), or null if it is not recorded.
+     */
+    @Nullable
+    private static Recording getRecording(@NonNull Map<ReportField, Recording> recordings, @NonNull byte[] line, int length) {
+        for (Map.Entry<ReportField, Recording> recording : recordings.entrySet()) {
+            final String bufferName = LogCatCollector.getBufferName(recording.getKey());
+            if (bufferName == null ? endsWithBuffer(line, length, "main") || endsWithBuffer(line, length, "system") : endsWithBuffer(line, length, bufferName)) {
+                return recording.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean endsWithBuffer(@NonNull byte[] line, int length, @NonNull String bufferName) {
+        final int start = length - bufferName.length();
+        if (start <= 0 || (line[start - 1] != ' ' && line[start - 1] != '/')) {
+            return false;
+        }
+        for (int i = 0; i < bufferName.length(); i++) {
+            if (line[start + i] != bufferName.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    private static byte[] toAscii(@NonNull String text) {
+        final byte[] result = new byte[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) text.charAt(i);
+        }
+        return result;
+    }
+
+    private static final class Recording {
+        private final LineRingBuffer lines;
+        private volatile boolean received;
+
+        Recording(@NonNull LineRingBuffer lines) {
+            this.lines = lines;
+        }
+    }
+
+    private final class Reader implements Runnable {
+
+        private final Map<ReportField, Recording> recordings;
+        private volatile boolean active;
+        private volatile boolean stopped;
+        private volatile Process process;
+        private Thread thread;
+
+        Reader(@NonNull Map<ReportField, Recording> recordings) {
+            this.recordings = recordings;
+        }
+
+        void stop() {
+            stopped = true;
+            active = false;
+            thread.interrupt();
+            // reading the output of logcat does not respond to interrupts
+            final Process current = process;
+            if (current != null) {
+                current.destroy();
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<String> commandLine = getCommandLine();
+            final byte[] pidFilter = getPidFilter();
+            final byte[] buffer = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
+            final byte[] line = new byte[MAX_LINE_LENGTH];
+            final Recording single = recordings.size() == 1 ? recordings.values().iterator().next() : null;
+            boolean received = false;
+            try {
+                while (true) {
+                    final Process process = new ProcessBuilder().command(commandLine).redirectErrorStream(true).start();
+                    this.process = process;
+                    if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Recording logcat " + commandLine);
+                    Recording current = single;
+                    try {
+                        // stop() destroys the process once it has been published, so only an earlier stop has to be checked
+                        if (stopped) {
+                            break;
+                        }
+                        final InputStream input = process.getInputStream();
+                        int lineLength = 0;
+                        int read;
+                        while ((read = input.read(buffer)) != -1) {
+                            for (int i = 0; i < read; i++) {
+                                final byte b = buffer[i];
+                                if (b == '\n') {
+                                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                                        lineLength--;
+                                    }
+                                    if (single == null && lineLength >= DIVIDER.length && IOUtils.contains(line, 0, DIVIDER.length, DIVIDER)) {
+                                        current = getRecording(recordings, line, lineLength);
+                                    } else if (current != null && (pidFilter == null || IOUtils.contains(line, 0, lineLength, pidFilter))) {
+                                        current.lines.append(line, 0, lineLength);
+                                        current.received = true;
+                                    }
+                                    lineLength = 0;
+                                    if (!received) {
+                                        received = true;
+                                        active = !stopped;
+                                    }
+                                } else if (lineLength < line.length) {
+                                    line[lineLength++] = b;
+                                }
+                            }
+                        }
+                    } finally {
+                        process.destroy();
+                    }
+                    if (stopped) {
+                        break;
+                    }
+                    if (!received) {
+                        // logcat is not usable, e.g. because of missing permissions. Fall back to forking at crash time.
+                        ACRA.log.w(ACRA.LOG_TAG, "logcat exited without output, stopped recording " + commandLine);
+                        break;
+                    }
+                    // logcat was killed, restart it. It replays its whole log, so the recorded lines are replaced.
+                    Thread.sleep(ACRAConstants.LOGCAT_READER_RESTART_DELAY);
+                    for (Recording recording : recordings.values()) {
+                        recording.lines.clear();
+                    }
+                }
+            } catch (IOException e) {
+                // reading fails when stop() destroys the process
+                if (!stopped) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Could not record logcat", e);
+                }
+            } catch (InterruptedException e) {
+                if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Logcat recording interrupted");
+            }
+            active = false;
+            if (ACRA.DEV_LOGGING && stopped) ACRA.log.d(ACRA.LOG_TAG, "Logcat recording stopped");
+        }
+    }
+}
@@ -70,6 +70,11 @@ final class MediaCodecListCollector extends Collector {
         super(ReportField.MEDIA_CODEC_LIST);
     }
 
+    @Override
+    boolean isStatic(ReportField reportField) {
+        return true;
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @NonNull
     @Override
@@ -16,6 +16,7 @@
 package me.wimanacra.collector;
 
 import android.os.Build;
+import android.os.Debug;
 import android.os.Environment;
 import android.os.StatFs;
 import android.support.annotation.NonNull;
@@ -24,36 +25,61 @@ import me.wimanacra.ACRA;
 import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
 import me.wimanacra.builder.ReportBuilder;
+import me.wimanacra.model.ComplexElement;
 import me.wimanacra.model.Element;
 import me.wimanacra.model.NumberElement;
 import me.wimanacra.model.StringElement;
 import me.wimanacra.util.IOUtils;
+import me.wimanacra.util.ProcUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
- * Collects results of the <code>dumpsys</code> command.
+ * Collects the memory state of the process, in process and with the <code>dumpsys</code> command.
  *
  * @author Kevin Gaudin & F43nd1r
  */
 final class MemoryInfoCollector extends Collector {
-    MemoryInfoCollector() {
-        super(ReportField.DUMPSYS_MEMINFO, ReportField.TOTAL_MEM_SIZE, ReportField.AVAILABLE_MEM_SIZE);
+    /**
+     * Memory related lines of /proc/self/status.
+     */
+    private static final String[] STATUS_MEMORY_KEYS = {"VmPeak", "VmSize", "VmHWM", "VmRSS", "VmData", "VmStk", "VmSwap", "RssAnon", "RssFile", "RssShmem"};
+    /**
+     * Reader and values for /proc/self/status on {@link OutOfMemoryError}, allocated up front. Guarded by itself.
+     */
+    private static final ProcUtils.Reader OOM_STATUS_READER = new ProcUtils.Reader();
+    private static final long[] OOM_STATUS_VALUES = new long[STATUS_MEMORY_KEYS.length];
+    private final long readDeadline;
+
+    /**
+     * @param readDeadline Point in time ({@link android.os.SystemClock#elapsedRealtime()}) at which the output of dumpsys is given up,
+     *                     or {@link CrashReportDataFactory#NO_DEADLINE} to read it until it ends.
+     */
+    MemoryInfoCollector(long readDeadline) {
+        super(ReportField.MEMORY_INFO, ReportField.DUMPSYS_MEMINFO, ReportField.TOTAL_MEM_SIZE, ReportField.AVAILABLE_MEM_SIZE);
+        this.readDeadline = readDeadline;
     }
 
     @Override
     boolean shouldCollect(Set<ReportField> crashReportFields, ReportField collect, ReportBuilder reportBuilder) {
-        return super.shouldCollect(crashReportFields, collect, reportBuilder) && !(reportBuilder.getException() instanceof OutOfMemoryError);
+        return super.shouldCollect(crashReportFields, collect, reportBuilder)
+                && (collect != ReportField.DUMPSYS_MEMINFO || !(reportBuilder.getException() instanceof OutOfMemoryError));
     }
 
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
         switch (reportField) {
+            case MEMORY_INFO:
+                return reportBuilder.getException() instanceof OutOfMemoryError ? collectMemoryInfoOnOom() : collectMemoryInfo();
             case DUMPSYS_MEMINFO:
                 return collectMemInfo();
             case TOTAL_MEM_SIZE:
@@ -66,6 +92,109 @@ final class MemoryInfoCollector extends Collector {
         }
     }
 
+    /**
+     * Collects the memory state of this process without forking.
+     *
+     * @return The memory state, with sizes in bytes or kB as named.
+     */
+    @NonNull
+    private static Element collectMemoryInfo() {
+        final ComplexElement result = new ComplexElement();
+        try {
+            final Runtime runtime = Runtime.getRuntime();
+            final JSONObject java = new JSONObject();
+            java.put("maxMemory", runtime.maxMemory());
+            java.put("totalMemory", runtime.totalMemory());
+            java.put("freeMemory", runtime.freeMemory());
+            java.put("usedMemory", runtime.totalMemory() - runtime.freeMemory());
+            result.put("javaHeap", java);
+
+            final JSONObject nativeHeap = new JSONObject();
+            nativeHeap.put("size", Debug.getNativeHeapSize());
+            nativeHeap.put("allocated", Debug.getNativeHeapAllocatedSize());
+            nativeHeap.put("free", Debug.getNativeHeapFreeSize());
+            result.put("nativeHeap", nativeHeap);
+
+            final Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+            Debug.getMemoryInfo(memoryInfo);
+            final JSONObject pss = new JSONObject();
+            pss.put("totalPss", memoryInfo.getTotalPss());
+            pss.put("totalPrivateDirty", memoryInfo.getTotalPrivateDirty());
+            pss.put("totalSharedDirty", memoryInfo.getTotalSharedDirty());
+            pss.put("dalvikPss", memoryInfo.dalvikPss);
+            pss.put("nativePss", memoryInfo.nativePss);
+            pss.put("otherPss", memoryInfo.otherPss);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                putAll(pss, memoryInfo.getMemoryStats());
+            }
+            result.put("memoryInfoKb", pss);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                final JSONObject runtimeStats = new JSONObject();
+                putAll(runtimeStats, Debug.getRuntimeStats());
+                result.put("runtimeStats", runtimeStats);
+            }
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not collect memory info", e);
+        }
+        try {
+            final JSONObject status = ProcUtils.readKeyValues("/proc/self/status");
+            final JSONObject memory = new JSONObject();
+            for (String key : STATUS_MEMORY_KEYS) {
+                if (status.has(key)) {
+                    memory.put(key, status.get(key));
+                }
+            }
+            result.put("statusKb", memory);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read /proc/self/status", e);
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not collect /proc/self/status", e);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the part of the memory state which is cheap to get when the heap is exhausted: no memory maps are parsed
+     * and the proc file is read into a buffer allocated up front. The result is a single flat object with the same keys
+     * as the flattened result of {@link #collectMemoryInfo()}.
+     *
+     * @return The memory state, with sizes in bytes or kB as named.
+     */
+    @NonNull
+    private static Element collectMemoryInfoOnOom() {
+        final ComplexElement result = new ComplexElement();
+        try {
+            final Runtime runtime = Runtime.getRuntime();
+            result.put("javaHeap.maxMemory", runtime.maxMemory());
+            result.put("javaHeap.totalMemory", runtime.totalMemory());
+            result.put("javaHeap.freeMemory", runtime.freeMemory());
+            result.put("javaHeap.usedMemory", runtime.totalMemory() - runtime.freeMemory());
+            result.put("nativeHeap.size", Debug.getNativeHeapSize());
+            result.put("nativeHeap.allocated", Debug.getNativeHeapAllocatedSize());
+            result.put("nativeHeap.free", Debug.getNativeHeapFreeSize());
+            synchronized (OOM_STATUS_READER) {
+                OOM_STATUS_READER.readNumbers("/proc/self/status", STATUS_MEMORY_KEYS, OOM_STATUS_VALUES);
+                for (int i = 0; i < STATUS_MEMORY_KEYS.length; i++) {
+                    if (OOM_STATUS_VALUES[i] >= 0) {
+                        result.put("statusKb." + STATUS_MEMORY_KEYS[i], OOM_STATUS_VALUES[i]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read /proc/self/status", e);
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not collect memory info", e);
+        }
+        return result;
+    }
+
+    private static void putAll(@NonNull JSONObject target, @NonNull Map<String, String> values) throws JSONException {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            target.put(entry.getKey(), ProcUtils.toValue(entry.getValue()));
+        }
+    }
+
     /**
      * Collect results of the <code>dumpsys meminfo</code> command restricted to
      * this application process.
@@ -73,7 +202,7 @@ final class MemoryInfoCollector extends Collector {
      * @return The execution result.
      */
     @NonNull
-    private static Element collectMemInfo() {
+    private Element collectMemInfo() {
 
         try {
             final List<String> commandLine = new ArrayList<String>();
@@ -82,7 +211,14 @@ final class MemoryInfoCollector extends Collector {
             commandLine.add(Integer.toString(android.os.Process.myPid()));
 
             final Process process = Runtime.getRuntime().exec(commandLine.toArray(new String[commandLine.size()]));
-            return new StringElement(IOUtils.streamToString(process.getInputStream()));
+            try {
+                if (readDeadline == CrashReportDataFactory.NO_DEADLINE) {
+                    return new StringElement(IOUtils.streamToString(process.getInputStream()));
+                }
+                return new StringElement(IOUtils.streamToStringNonBlockingRead(process.getInputStream(), readDeadline));
+            } finally {
+                process.destroy();
+            }
         } catch (IOException e) {
             ACRA.log.e(ACRA.LOG_TAG, "MemoryInfoCollector.meminfo could not retrieve data", e);
             return ACRAConstants.NOT_AVAILABLE;
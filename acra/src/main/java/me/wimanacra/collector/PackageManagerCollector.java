@@ -40,6 +40,11 @@ final class PackageManagerCollector extends Collector {
         this.pm = pm;
     }
 
+    @Override
+    boolean isStatic(ReportField reportField) {
+        return true;
+    }
+
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
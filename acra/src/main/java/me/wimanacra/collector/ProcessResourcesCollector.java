@@ -0,0 +1,157 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.system.Os;
+import android.system.OsConstants;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.builder.ReportBuilder;
+import me.wimanacra.model.ComplexElement;
+import me.wimanacra.model.Element;
+import me.wimanacra.util.ProcUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Collects the resource usage of the process from the proc filesystem: file descriptors, threads, CPU time and I/O.
+ * All files are read into one bounded buffer, nothing is forked.
+ */
+final class ProcessResourcesCollector extends Collector {
+
+    private static final String PROC_SELF = "/proc/self/";
+    private static final String[] STATUS_KEYS = {"Threads", "FDSize", "voluntary_ctxt_switches", "nonvoluntary_ctxt_switches"};
+    private static final String OPEN_FILES_LIMIT = "Max open files";
+
+    // indices of /proc/[pid]/task/[tid]/stat fields after the command name
+    private static final int STAT_STATE = 0;
+    private static final int STAT_UTIME = 11;
+    private static final int STAT_STIME = 12;
+    private static final int STAT_PRIORITY = 15;
+    private static final int STAT_NICE = 16;
+
+    ProcessResourcesCollector() {
+        super(ReportField.PROCESS_RESOURCES);
+    }
+
+    @NonNull
+    @Override
+    Element collect(ReportField reportField, ReportBuilder reportBuilder) {
+        final ProcUtils.Reader reader = new ProcUtils.Reader();
+        final ComplexElement result = new ComplexElement();
+        try {
+            final String[] fds = new File(PROC_SELF + "fd").list();
+            if (fds != null) {
+                result.put("fdCount", fds.length);
+            }
+            putFdLimit(reader, result);
+            putKeyValues(reader, "status", STATUS_KEYS, result);
+            putKeyValues(reader, "io", null, result);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                result.put("clockTicksPerSecond", Os.sysconf(OsConstants._SC_CLK_TCK));
+            }
+            putThreads(reader, result);
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not collect process resources", e);
+        }
+        return result;
+    }
+
+    private static void putFdLimit(@NonNull ProcUtils.Reader reader, @NonNull JSONObject result) throws JSONException {
+        try {
+            for (String line : reader.read(PROC_SELF + "limits").split("\n")) {
+                if (line.startsWith(OPEN_FILES_LIMIT)) {
+                    // columns: name, soft limit, hard limit, unit
+                    final String[] limits = line.substring(OPEN_FILES_LIMIT.length()).trim().split("\\s+");
+                    if (limits.length >= 2) {
+                        result.put("fdSoftLimit", ProcUtils.toValue(limits[0]));
+                        result.put("fdHardLimit", ProcUtils.toValue(limits[1]));
+                    }
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read " + PROC_SELF + "limits", e);
+        }
+    }
+
+    private static void putKeyValues(@NonNull ProcUtils.Reader reader, @NonNull String file, @Nullable String[] keys, @NonNull JSONObject result) throws JSONException {
+        try {
+            final JSONObject values = reader.readKeyValues(PROC_SELF + file);
+            if (keys == null) {
+                result.put(file, values);
+            } else {
+                final JSONObject selected = new JSONObject();
+                for (String key : keys) {
+                    if (values.has(key)) {
+                        selected.put(key, values.get(key));
+                    }
+                }
+                result.put(file, selected);
+            }
+        } catch (IOException e) {
+            // e.g. /proc/self/io is not readable on some kernels
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read " + PROC_SELF + file, e);
+        }
+    }
+
+    private static void putThreads(@NonNull ProcUtils.Reader reader, @NonNull JSONObject result) throws JSONException {
+        final String[] tids = new File(PROC_SELF + "task").list();
+        if (tids == null) {
+            return;
+        }
+        result.put("threadCount", tids.length);
+        final JSONArray threads = new JSONArray();
+        for (int i = 0; i < tids.length && i < ACRAConstants.PROCESS_RESOURCES_MAX_THREADS; i++) {
+            try {
+                final String stat = reader.read(PROC_SELF + "task/" + tids[i] + "/stat");
+                // the command name is in parentheses and may contain spaces and parentheses itself
+                final int nameStart = stat.indexOf('(');
+                final int nameEnd = stat.lastIndexOf(')');
+                if (nameStart < 0 || nameEnd < nameStart) {
+                    continue;
+                }
+                final String[] fields = stat.substring(nameEnd + 1).trim().split(" ");
+                if (fields.length <= STAT_NICE) {
+                    continue;
+                }
+                final JSONObject thread = new JSONObject();
+                thread.put("tid", ProcUtils.toValue(tids[i]));
+                thread.put("name", stat.substring(nameStart + 1, nameEnd));
+                thread.put("state", fields[STAT_STATE]);
+                thread.put("utime", ProcUtils.toValue(fields[STAT_UTIME]));
+                thread.put("stime", ProcUtils.toValue(fields[STAT_STIME]));
+                thread.put("priority", ProcUtils.toValue(fields[STAT_PRIORITY]));
+                thread.put("nice", ProcUtils.toValue(fields[STAT_NICE]));
+                threads.put(thread);
+            } catch (IOException e) {
+                // the thread has ended in the meantime
+                if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Could not read stat of thread " + tids[i]);
+            }
+        }
+        result.put("threads", threads);
+    }
+}
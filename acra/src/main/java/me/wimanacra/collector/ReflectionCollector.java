@@ -104,6 +104,14 @@ final class ReflectionCollector extends Collector {
         }
     }
 
+    /**
+     * Build information is constant, the environment is not.
+     */
+    @Override
+    boolean isStatic(ReportField reportField) {
+        return reportField != ReportField.ENVIRONMENT;
+    }
+
     @NonNull
     @Override
     Element collect(ReportField reportField, ReportBuilder reportBuilder) {
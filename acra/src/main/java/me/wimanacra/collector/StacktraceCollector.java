@@ -40,6 +40,11 @@ final class StacktraceCollector extends Collector {
         super(ReportField.STACK_TRACE, ReportField.STACK_TRACE_HASH);
     }
 
+    @Override
+    boolean isFast() {
+        return true;
+    }
+
     @Override
     boolean shouldCollect(Set<ReportField> crashReportFields, ReportField collect, ReportBuilder reportBuilder) {
         return collect == ReportField.STACK_TRACE || super.shouldCollect(crashReportFields, collect, reportBuilder);
@@ -83,7 +88,7 @@ final class StacktraceCollector extends Collector {
     }
 
     @NonNull
-    private String getStackTraceHash(@Nullable Throwable th) {
+    static String getStackTraceHash(@Nullable Throwable th) {
         final StringBuilder res = new StringBuilder();
         Throwable cause = th;
         while (cause != null) {
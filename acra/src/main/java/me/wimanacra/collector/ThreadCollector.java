@@ -35,6 +35,11 @@ final class ThreadCollector extends Collector {
         super(ReportField.THREAD_DETAILS);
     }
 
+    @Override
+    boolean isFast() {
+        return true;
+    }
+
     /**
      * collects some data identifying the crashed thread
      *
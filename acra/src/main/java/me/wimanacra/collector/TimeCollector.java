@@ -43,6 +43,11 @@ final class TimeCollector extends Collector {
         this.appStartDate = appStartDate;
     }
 
+    @Override
+    boolean isFast() {
+        return true;
+    }
+
     @Override
     boolean shouldCollect(Set<ReportField> crashReportFields, ReportField collect, ReportBuilder reportBuilder) {
         return true;
@@ -58,6 +63,10 @@ final class TimeCollector extends Collector {
                 break;
             case USER_CRASH_DATE:
                 time = new GregorianCalendar();
+                final Long timestamp = reportBuilder.getTimestamp();
+                if (timestamp != null) {
+                    time.setTimeInMillis(timestamp);
+                }
                 break;
             default:
                 //will not happen if used correctly
@@ -98,6 +98,13 @@ public final class ConfigurationBuilder extends BaseConfigurationBuilder<Configu
         if (reportSenderFactoryClasses().length == 0) {
             throw new ACRAConfigurationException("Report sender factories: using no report senders will make ACRA useless. Configure at least one ReportSenderFactory.");
         }
+        if (captureBudget() > 0 && captureBudget() <= ACRAConstants.CAPTURE_BUDGET_PERSIST_RESERVE) {
+            throw new ACRAConfigurationException("Capture budget: " + captureBudget() + "ms leaves no time for collection, it has to be larger than "
+                    + ACRAConstants.CAPTURE_BUDGET_PERSIST_RESERVE + "ms or 0.");
+        }
+        if (reportCompressionLevel() < 0 || reportCompressionLevel() > 9) {
+            throw new ACRAConfigurationException("Report compression level: " + reportCompressionLevel() + " is not a GZIP compression level, it has to be between 0 and 9.");
+        }
         checkValidity((Class[]) reportSenderFactoryClasses());
         checkValidity(reportDialogClass(), reportPrimerClass(), retryPolicyClass(), keyStoreFactoryClass());
 
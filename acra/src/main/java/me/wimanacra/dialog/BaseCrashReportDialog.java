@@ -11,6 +11,7 @@ import me.wimanacra.collector.CrashReportData;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.file.BulkReportDeleter;
 import me.wimanacra.file.CrashReportPersister;
+import me.wimanacra.file.ReportIndex;
 import me.wimanacra.sender.SenderServiceStarter;
 import me.wimanacra.util.ToastSender;
 import org.json.JSONException;
@@ -119,13 +120,14 @@ public abstract class BaseCrashReportDialog extends FragmentActivity {
      * @param userEmail Email address (may be null) provided by the client.
      */
     protected final void sendCrash(@Nullable String comment, @Nullable String userEmail) {
-        final CrashReportPersister persister = new CrashReportPersister();
+        final CrashReportPersister persister = new CrashReportPersister(config.reportStorageFormat(), config.reportCompressionLevel());
         try {
             if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Add user comment to " + reportFile);
-            final CrashReportData crashData = persister.load(reportFile);
+            final CrashReportData crashData = persister.load(reportFile, null);
             crashData.putString(USER_COMMENT, comment == null ? "" : comment);
             crashData.putString(USER_EMAIL, userEmail == null ? "" : userEmail);
             persister.store(crashData, reportFile);
+            ReportIndex.getInstance(getApplicationContext()).add(reportFile, null);
         } catch (IOException e) {
             ACRA.log.w(ACRA.LOG_TAG, "User comment not added: ", e);
         } catch (JSONException e) {
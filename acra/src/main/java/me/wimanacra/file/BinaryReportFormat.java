@@ -0,0 +1,384 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.collector.CrashReportData;
+import me.wimanacra.model.ComplexElement;
+import me.wimanacra.model.Element;
+import me.wimanacra.util.StreamingJsonReader;
+import me.wimanacra.util.StreamingJsonWriter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes reports in {@link StorageFormat#BINARY}.
+ * <p>
+ * All numbers are big endian, strings are UTF-8 encoded and prefixed with their length in bytes (int).
+ * <pre>
+ * header: magic "ACRB", schema version (byte), flags (byte), crash time in ms (long), stack trace hash (string), entry count (short)
+ * entry:  field ordinal (short), value type (byte), value length (int), value
+ * </pre>
+ * Fields are identified by their ordinal, so {@link #SCHEMA_VERSION} has to be raised
+ * whenever {@link ReportField} constants are removed or reordered, and {@link #getReportFields(int)}
+ * has to keep returning the old order for the old version, so reports stored before an update can still be read.
+ * Reports of a newer version are rejected with an {@link UnsupportedReportVersionException}.
+ * </p>
+ */
+final class BinaryReportFormat {
+
+    private static final byte[] MAGIC = {'A', 'C', 'R', 'B'};
+    private static final int SCHEMA_VERSION = 1;
+    // magic, version, flags, crash time, length of the stack trace hash
+    private static final int FIXED_HEADER_SIZE = MAGIC.length + 1 + 1 + 8 + 4;
+    // ordinal, type, length
+    private static final int ENTRY_HEADER_SIZE = 2 + 1 + 4;
+    private static final int FLAG_SILENT = 1;
+    // ACRAConstants.DATE_TIME_FORMAT_STRING with an RFC 822 zone, which can be parsed on all platforms
+    private static final String CRASH_DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_LONG = 1;
+    private static final int TYPE_DOUBLE = 2;
+    private static final int TYPE_BOOLEAN = 3;
+    private static final int TYPE_JSON = 4;
+
+    private BinaryReportFormat() {
+    }
+
+    /**
+     * Data of a report which is available without reading its fields.
+     * The stack trace hash is empty if the report has none.
+     */
+    static final class Header {
+        final int version;
+        final boolean silent;
+        final long timestamp;
+        @NonNull
+        final String stackTraceHash;
+        // size of the header in bytes, without the entry count
+        final int size;
+
+        private Header(int version, boolean silent, long timestamp, @NonNull String stackTraceHash, int size) {
+            this.version = version;
+            this.silent = silent;
+            this.timestamp = timestamp;
+            this.stackTraceHash = stackTraceHash;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Checks the first bytes of the stream without consuming them.
+     *
+     * @param in stream at the start of a report.
+     * @return if the report is stored in this format.
+     */
+    static boolean isBinary(@NonNull BufferedInputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    static void write(@NonNull CrashReportData data, @NonNull OutputStream out) throws IOException {
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out, ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES));
+        output.write(MAGIC);
+        output.writeByte(SCHEMA_VERSION);
+        final Header header = getHeader(data);
+        output.writeByte(header.silent ? FLAG_SILENT : 0);
+        output.writeLong(header.timestamp);
+        writeString(output, header.stackTraceHash);
+        output.writeShort(data.size());
+        for (Map.Entry<ReportField, Element> entry : data.entrySet()) {
+            output.writeShort(entry.getKey().ordinal());
+            final Object value = entry.getValue().value();
+            if (value instanceof JSONObject) {
+                final ByteArrayOutputStream json = new ByteArrayOutputStream();
+                final StreamingJsonWriter writer = new StreamingJsonWriter(json);
+                writer.value(value);
+                writer.flush();
+                output.writeByte(TYPE_JSON);
+                output.writeInt(json.size());
+                json.writeTo(output);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                output.writeByte(TYPE_LONG);
+                output.writeInt(8);
+                output.writeLong(((Number) value).longValue());
+            } else if (value instanceof Number) {
+                output.writeByte(TYPE_DOUBLE);
+                output.writeInt(8);
+                output.writeDouble(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                output.writeByte(TYPE_BOOLEAN);
+                output.writeInt(1);
+                output.writeBoolean((Boolean) value);
+            } else {
+                output.writeByte(TYPE_STRING);
+                writeString(output, String.valueOf(value));
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * @param in     stream at the start of the report.
+     * @param file   report file, for lazily read values.
+     * @param fields fields to read, or null for all fields.
+     * @param lazy   if large strings should be read from the file only when they are used.
+     * @return the report.
+     */
+    @NonNull
+    static CrashReportData read(@NonNull InputStream in, @NonNull File file, @Nullable Set<ReportField> fields, boolean lazy) throws IOException, JSONException {
+        final DataInputStream input = new DataInputStream(in);
+        final Header header = readHeader(input);
+        final int count = input.readUnsignedShort();
+        long position = header.size + 2;
+        final ReportField[] reportFields = getReportFields(header.version);
+        final CrashReportData data = new CrashReportData();
+        for (int i = 0; i < count; i++) {
+            final int ordinal = input.readUnsignedShort();
+            final int type = input.readUnsignedByte();
+            final int length = readLength(input);
+            position += ENTRY_HEADER_SIZE;
+            final ReportField field = ordinal < reportFields.length ? reportFields[ordinal] : null;
+            if (field == null) {
+                ACRA.log.w(ACRA.LOG_TAG, "Unknown report field ordinal " + ordinal);
+            }
+            if (field == null || (fields != null && !fields.contains(field))) {
+                skip(input, length);
+            } else if (type == TYPE_STRING && lazy && length > ACRAConstants.LAZY_VALUE_THRESHOLD) {
+                skip(input, length);
+                data.put(field, new LazyStringElement(file, position, length));
+            } else {
+                readValue(input, type, length, field, data);
+            }
+            position += length;
+        }
+        return data;
+    }
+
+    /**
+     * Reads the header of a report without reading its fields.
+     *
+     * @param in stream at the start of the report.
+     * @return the header.
+     */
+    @NonNull
+    static Header readHeader(@NonNull DataInputStream in) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary report");
+        }
+        final int version = in.readUnsignedByte();
+        if (version > SCHEMA_VERSION) {
+            throw new UnsupportedReportVersionException("Report schema version " + version + " is newer than " + SCHEMA_VERSION);
+        }
+        if (version < 1) {
+            throw new IOException("Invalid report schema version " + version);
+        }
+        final int flags = in.readUnsignedByte();
+        final long timestamp = in.readLong();
+        final int hashLength = readLength(in);
+        final String hash = readString(in, hashLength);
+        return new Header(version, (flags & FLAG_SILENT) != 0, timestamp, hash, FIXED_HEADER_SIZE + hashLength);
+    }
+
+    /**
+     * @param version schema version of a report, at most {@link #SCHEMA_VERSION}.
+     * @return the report fields of the schema version, indexed by the ordinals stored in the report.
+     */
+    @NonNull
+    private static ReportField[] getReportFields(int version) {
+        // version 1 is the current one. When the ordinals change, return the fields in their order of the older versions here.
+        return ReportField.values();
+    }
+
+    private static void readValue(@NonNull DataInputStream in, int type, int length, @NonNull ReportField field, @NonNull CrashReportData data) throws IOException, JSONException {
+        switch (type) {
+            case TYPE_STRING:
+                data.putString(field, readString(in, length));
+                break;
+            case TYPE_LONG:
+                checkLength(length, 8);
+                data.putNumber(field, in.readLong());
+                break;
+            case TYPE_DOUBLE:
+                checkLength(length, 8);
+                data.putNumber(field, in.readDouble());
+                break;
+            case TYPE_BOOLEAN:
+                checkLength(length, 1);
+                data.putBoolean(field, in.readBoolean());
+                break;
+            case TYPE_JSON:
+                final byte[] json = new byte[length];
+                in.readFully(json);
+                final ComplexElement element = new ComplexElement();
+                new StreamingJsonReader(new ByteArrayInputStream(json)).nextObject(element);
+                data.put(field, element);
+                break;
+            default:
+                throw new IOException("Unknown value type " + type + " of " + field);
+        }
+    }
+
+    private static int readLength(@NonNull DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid value length " + length);
+        }
+        return length;
+    }
+
+    private static void checkLength(int length, int expected) throws IOException {
+        if (length != expected) {
+            throw new IOException("Invalid value length " + length + ", expected " + expected);
+        }
+    }
+
+    private static void skip(@NonNull DataInputStream in, int length) throws IOException {
+        if (in.skipBytes(length) != length) {
+            throw new EOFException();
+        }
+    }
+
+    @NonNull
+    private static String readString(@NonNull DataInputStream in, int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, ACRAConstants.UTF8);
+    }
+
+    /**
+     * Writes the length prefixed UTF-8 encoding of the string, without an intermediate byte array.
+     * Unpaired surrogates are written as '?'.
+     */
+    private static void writeString(@NonNull DataOutputStream out, @NonNull String value) throws IOException {
+        final int length = value.length();
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                size++;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (isSurrogatePair(value, i)) {
+                size += 4;
+                i++;
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                size++;
+            } else {
+                size += 3;
+            }
+        }
+        out.writeInt(size);
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else if (isSurrogatePair(value, i)) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.write(0xf0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3f));
+                out.write(0x80 | ((codePoint >> 6) & 0x3f));
+                out.write(0x80 | (codePoint & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                out.write('?');
+            } else {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static boolean isSurrogatePair(@NonNull String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    /**
+     * @param data a report, which may contain only the fields of the header.
+     * @return the header the report is stored with.
+     */
+    @NonNull
+    static Header getHeader(@NonNull CrashReportData data) {
+        final Element hash = data.get(ReportField.STACK_TRACE_HASH);
+        return new Header(SCHEMA_VERSION, isSilent(data), getTimestamp(data), hash != null ? hash.toString() : "", 0);
+    }
+
+    private static boolean isSilent(@NonNull CrashReportData data) {
+        final Element silent = data.get(ReportField.IS_SILENT);
+        return silent != null && Boolean.parseBoolean(silent.toString());
+    }
+
+    /**
+     * @return the time of the crash as stored in {@link ReportField#USER_CRASH_DATE}, or the current time if it is not available.
+     */
+    private static long getTimestamp(@NonNull CrashReportData data) {
+        final Element date = data.get(ReportField.USER_CRASH_DATE);
+        if (date != null) {
+            String value = date.toString();
+            // the zone is formatted as "+01:00" or "Z"
+            if (value.endsWith("Z")) {
+                value = value.substring(0, value.length() - 1) + "+0000";
+            } else if (value.length() > 3 && value.charAt(value.length() - 3) == ':') {
+                value = value.substring(0, value.length() - 3) + value.substring(value.length() - 2);
+            }
+            try {
+                return new SimpleDateFormat(CRASH_DATE_FORMAT, Locale.ENGLISH).parse(value).getTime();
+            } catch (ParseException e) {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not parse crash date " + date, e);
+            }
+        }
+        return System.currentTimeMillis();
+    }
+}
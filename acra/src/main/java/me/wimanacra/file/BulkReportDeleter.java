@@ -3,10 +3,7 @@ package me.wimanacra.file;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-import me.wimanacra.ACRA;
-
-import java.io.File;
-import java.util.Arrays;
+import java.util.List;
 
 /**
  * Deletes unsent reports.
@@ -14,10 +11,10 @@ import java.util.Arrays;
 public final class BulkReportDeleter {
 
     @NonNull
-    private final ReportLocator reportLocator;
+    private final ReportIndex reportIndex;
 
     public BulkReportDeleter(@NonNull Context context) {
-        this.reportLocator = new ReportLocator(context);
+        this.reportIndex = ReportIndex.getInstance(context);
     }
 
     /**
@@ -25,14 +22,10 @@ public final class BulkReportDeleter {
      * @param nrToKeep  Number of latest reports to keep.
      */
     public void deleteReports(boolean approved, int nrToKeep) {
-        final File[] files = approved ? reportLocator.getApprovedReports() : reportLocator.getUnapprovedReports();
-
-        Arrays.sort(files, new LastModifiedComparator());
+        final List<ReportIndex.Entry> reports = reportIndex.getReports(approved);
 
-        for (int i = 0; i < files.length - nrToKeep; i++) {
-            if (!files[i].delete()) {
-                ACRA.log.w(ACRA.LOG_TAG, "Could not delete report : " + files[i]);
-            }
+        for (int i = 0; i < reports.size() - nrToKeep; i++) {
+            reportIndex.delete(reports.get(i).getFile());
         }
     }
 }
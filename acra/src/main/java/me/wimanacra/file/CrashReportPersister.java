@@ -20,22 +20,31 @@
 package me.wimanacra.file;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import me.wimanacra.ACRA;
 import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
 import me.wimanacra.collector.CrashReportData;
+import me.wimanacra.model.ComplexElement;
+import me.wimanacra.model.StringElement;
 import me.wimanacra.util.JsonUtils;
 import me.wimanacra.util.IOUtils;
+import me.wimanacra.util.StreamingJsonReader;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Stores a crash reports data with {@link ReportField} enum values as keys.
@@ -46,6 +55,32 @@ import java.io.OutputStreamWriter;
  */
 public final class CrashReportPersister {
 
+    /**
+     * Fields stored in the header of a binary report.
+     */
+    private static final Set<ReportField> HEADER_FIELDS = EnumSet.of(ReportField.IS_SILENT, ReportField.USER_CRASH_DATE, ReportField.STACK_TRACE_HASH);
+
+    private final StorageFormat format;
+    private final int compressionLevel;
+
+    /**
+     * Creates a persister which stores reports as uncompressed JSON.
+     */
+    public CrashReportPersister() {
+        this(StorageFormat.JSON, 0);
+    }
+
+    /**
+     * Reports of all formats can be loaded, whether compressed or not.
+     *
+     * @param format           format of stored reports.
+     * @param compressionLevel GZIP compression level of stored reports, or 0 to store them uncompressed.
+     */
+    public CrashReportPersister(@NonNull StorageFormat format, int compressionLevel) {
+        this.format = format;
+        this.compressionLevel = compressionLevel;
+    }
+
     /**
      * Loads properties from the specified {@code File}.
      *
@@ -56,15 +91,159 @@ public final class CrashReportPersister {
      */
     @NonNull
     public CrashReportData load(@NonNull File file) throws IOException, JSONException {
+        return load(file, null, false);
+    }
 
-        final InputStream in = new BufferedInputStream(new FileInputStream(file), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+    /**
+     * Loads the given fields from the specified {@code File}. The values of all other fields are skipped without being decoded.
+     * Strings larger than {@link ACRAConstants#LAZY_VALUE_THRESHOLD} are not kept in memory, but read from the file whenever they are used.
+     * They are no longer available once the file has been changed or deleted.
+     * Compressed files are loaded completely, as each access would have to decompress the file from its start.
+     *
+     * @param file   Report file from which to load the CrashData.
+     * @param fields fields to load, or null for all fields.
+     * @return CrashReportData read from the supplied File.
+     * @throws IOException if error occurs during reading from the {@code File}.
+     * @throws JSONException if the stream cannot be parsed as a JSON object.
+     */
+    @NonNull
+    public CrashReportData load(@NonNull File file, @Nullable Set<ReportField> fields) throws IOException, JSONException {
+        return load(file, fields, true);
+    }
+
+    @NonNull
+    private CrashReportData load(@NonNull File file, @Nullable Set<ReportField> fields, boolean lazy) throws IOException, JSONException {
+        final BufferedInputStream raw = new BufferedInputStream(new FileInputStream(file), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+        final boolean compressed = isCompressed(raw);
+        final BufferedInputStream in = compressed ? decompress(raw) : raw;
+        // values of a compressed file cannot be read from their offset, so they are not loaded lazily
+        final boolean lazyValues = lazy && !compressed;
         try {
-            return JsonUtils.toCrashReportData(new JSONObject(IOUtils.streamToString(in)));
-        }finally {
+            if (BinaryReportFormat.isBinary(in)) {
+                return BinaryReportFormat.read(in, file, fields, lazyValues);
+            }
+            return loadJson(in, file, fields, lazyValues);
+        } finally {
             IOUtils.safeClose(in);
         }
     }
 
+    /**
+     * Reads the data which identifies a report, its silent flag, crash time and stack trace hash, in any format.
+     * Of a binary report only the header is read, of a JSON report only the fields of the header are decoded.
+     *
+     * @param file Report file from which to read the header.
+     * @return the header of the report.
+     * @throws IOException if error occurs during reading from the {@code File}.
+     * @throws JSONException if the stream cannot be parsed as a JSON object.
+     */
+    @NonNull
+    static BinaryReportFormat.Header loadHeader(@NonNull File file) throws IOException, JSONException {
+        final BufferedInputStream in = open(file);
+        try {
+            if (BinaryReportFormat.isBinary(in)) {
+                return BinaryReportFormat.readHeader(new DataInputStream(in));
+            }
+            return BinaryReportFormat.getHeader(loadJson(in, file, HEADER_FIELDS, false));
+        } finally {
+            IOUtils.safeClose(in);
+        }
+    }
+
+    /**
+     * Opens a report file for reading, decompressing it if it is compressed.
+     *
+     * @param file report file.
+     * @return the uncompressed content of the file.
+     * @throws IOException if the file could not be opened.
+     */
+    @NonNull
+    static BufferedInputStream open(@NonNull File file) throws IOException {
+        final BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+        return isCompressed(in) ? decompress(in) : in;
+    }
+
+    /**
+     * Checks the first bytes of the stream without consuming them.
+     *
+     * @param in stream at the start of a report file.
+     * @return if the file is GZIP compressed.
+     */
+    private static boolean isCompressed(@NonNull BufferedInputStream in) throws IOException {
+        in.mark(2);
+        try {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * @param in stream at the start of a compressed report file, which is closed if it cannot be decompressed.
+     * @return the uncompressed content.
+     */
+    @NonNull
+    private static BufferedInputStream decompress(@NonNull BufferedInputStream in) throws IOException {
+        try {
+            return new BufferedInputStream(new GZIPInputStream(in, ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+        } catch (IOException e) {
+            IOUtils.safeClose(in);
+            throw e;
+        }
+    }
+
+    @NonNull
+    private static CrashReportData loadJson(@NonNull InputStream in, @NonNull File file, @Nullable Set<ReportField> fields, boolean lazy) throws IOException, JSONException {
+        final StreamingJsonReader reader = new StreamingJsonReader(in);
+        final CrashReportData data = new CrashReportData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String key = reader.nextName();
+            final ReportField field = toReportField(key);
+            if (field == null || (fields != null && !fields.contains(field))) {
+                reader.skipValue();
+                continue;
+            }
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    final ComplexElement element = new ComplexElement();
+                    reader.nextObject(element);
+                    data.put(field, element);
+                    break;
+                case STRING:
+                    if (lazy) {
+                        final long offset = reader.getPosition();
+                        final String value = reader.nextString(ACRAConstants.LAZY_VALUE_THRESHOLD);
+                        data.put(field, value != null ? new StringElement(value) : new LazyStringElement(file, offset, LazyStringElement.JSON_STRING));
+                    } else {
+                        data.putString(field, reader.nextString());
+                    }
+                    break;
+                default:
+                    final Object value = reader.nextValue();
+                    if (value instanceof Number) {
+                        data.putNumber(field, (Number) value);
+                    } else if (value instanceof Boolean) {
+                        data.putBoolean(field, (Boolean) value);
+                    } else {
+                        data.putString(field, value.toString());
+                    }
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    @Nullable
+    private static ReportField toReportField(@NonNull String key) {
+        try {
+            return ReportField.valueOf(key);
+        } catch (IllegalArgumentException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Unknown report key " + key, e);
+            return null;
+        }
+    }
+
     /**
      * Stores the mappings in this Properties to the specified OutputStream,
      * putting the specified comment at the beginning. The output from this
@@ -73,15 +252,61 @@ public final class CrashReportPersister {
      * @param crashData     CrashReportData to save.
      * @param file          File into which to store the CrashReportData.
      * @throws java.io.IOException if the CrashReportData could not be written to the OutputStream.
+     * @see #store(CrashReportData, File, boolean)
      */
     public void store(@NonNull CrashReportData crashData, @NonNull File file) throws IOException {
+        store(crashData, file, true);
+    }
 
-        final OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file), ACRAConstants.UTF8);
+    /**
+     * Stores the report atomically: it is written to a temporary file next to the given file, which then replaces the given file.
+     * If the process is killed while writing, the given file remains as it was.
+     *
+     * @param crashData CrashReportData to save.
+     * @param file      File into which to store the CrashReportData.
+     * @param sync      if the content should be forced to the storage device before the file is replaced,
+     *                  so it also survives a power loss. This is the expensive part of storing a report.
+     * @throws java.io.IOException if the CrashReportData could not be written to the OutputStream.
+     */
+    public void store(@NonNull CrashReportData crashData, @NonNull File file, boolean sync) throws IOException {
+
+        // writing next to the file also keeps lazily loaded values of crashData readable until it is replaced
+        final File temp = new File(file.getPath() + ACRAConstants.TEMPFILE_EXTENSION);
+        // stream the fields straight to the file, a JSONObject of the whole report would hold big fields several times
+        final FileOutputStream fileOut = new FileOutputStream(temp);
+        final OutputStream out = compressionLevel > 0 ? new CompressingOutputStream(fileOut, compressionLevel) : fileOut;
+        boolean written = false;
         try {
-            writer.write(crashData.toJSON().toString());
-            writer.flush();
+            if (format == StorageFormat.BINARY) {
+                BinaryReportFormat.write(crashData, out);
+            } else {
+                JsonUtils.writeJson(crashData, out);
+            }
+            if (out instanceof CompressingOutputStream) {
+                ((CompressingOutputStream) out).finish();
+            }
+            if (sync) {
+                fileOut.getFD().sync();
+            }
+            written = true;
         } finally {
-            IOUtils.safeClose(writer);
+            IOUtils.safeClose(out);
+            if (!written && !temp.delete()) {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not delete incomplete report file " + temp);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            if (!temp.delete()) {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not delete report file " + temp);
+            }
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static final class CompressingOutputStream extends GZIPOutputStream {
+        CompressingOutputStream(@NonNull OutputStream out, int level) throws IOException {
+            super(out, ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+            def.setLevel(level);
         }
     }
 }
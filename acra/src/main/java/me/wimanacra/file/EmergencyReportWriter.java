@@ -0,0 +1,446 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.util.IOUtils;
+import me.wimanacra.util.PackageManagerWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Writes a minimal report when the heap is exhausted.
+ * <p>
+ * Everything needed to write the report (memory ballast, output buffer, file, report id, date format) is allocated
+ * when the writer is armed. On an {@link OutOfMemoryError} the ballast is released and the report is encoded
+ * byte by byte into the buffer, without building a JSON tree or any intermediate strings.
+ * </p>
+ * <p>
+ * The emergency report is discarded as soon as the regular report has been persisted.
+ * Otherwise it is turned into a report stub when the writer of the same process is armed next time.
+ * </p>
+ */
+public final class EmergencyReportWriter {
+
+    private static final String FOLDER_NAME = "ACRA-emergency";
+    private static final String FILE_NAME_PREFIX = "report-";
+    /**
+     * Maximum size in bytes of a string value written before the stack trace. With the values capped, everything
+     * before the stack trace always fits into the buffer, and only the stack trace has to be truncated.
+     */
+    private static final int MAX_STRING_SIZE = 256;
+    /**
+     * Maximum size in bytes of a number, {@link Long#MIN_VALUE}.
+     */
+    private static final int MAX_NUMBER_SIZE = 20;
+
+    private final Context context;
+    private final String fileName;
+    private final int reserveSize;
+
+    private byte[] ballast;
+    private byte[] buffer;
+    private int position;
+    private boolean truncated;
+    private RandomAccessFile file;
+    private SimpleDateFormat dateFormat;
+    private Date date;
+    private String reportId;
+    private String versionName;
+    private int versionCode;
+    private boolean written;
+
+    /**
+     * @param context     Application context.
+     * @param processName Name of the current process, each process of the application has its own emergency report.
+     * @param reserveSize Size in bytes of the memory which is reserved for the OutOfMemoryError path.
+     */
+    public EmergencyReportWriter(@NonNull Context context, @Nullable String processName, int reserveSize) {
+        this.context = context;
+        final String name = processName != null ? processName : String.valueOf(Process.myPid());
+        this.fileName = FILE_NAME_PREFIX + name.replaceAll("[^\\w.-]", "_");
+        this.reserveSize = reserveSize;
+    }
+
+    /**
+     * @param throwable the throwable to check.
+     * @return if the throwable or one of its causes is an {@link OutOfMemoryError}.
+     */
+    public static boolean isOutOfMemory(@Nullable Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof OutOfMemoryError) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Recovers a report left behind by a previous process and reserves everything needed to write a new one.
+     * Does nothing if the writer is already armed.
+     */
+    public synchronized void arm() {
+        if (file != null) {
+            return;
+        }
+        final File emergencyFile = new File(context.getDir(FOLDER_NAME, Context.MODE_PRIVATE), fileName);
+        recover(emergencyFile);
+        try {
+            file = new RandomAccessFile(emergencyFile, "rw");
+            file.setLength(0);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not open emergency report file", e);
+            IOUtils.safeClose(file);
+            file = null;
+            return;
+        }
+        ballast = new byte[reserveSize];
+        buffer = new byte[ACRAConstants.EMERGENCY_BUFFER_SIZE];
+        dateFormat = new SimpleDateFormat(ACRAConstants.DATE_TIME_FORMAT_STRING, Locale.ENGLISH);
+        date = new Date();
+        reportId = UUID.randomUUID().toString();
+        final PackageInfo packageInfo = new PackageManagerWrapper(context).getPackageInfo();
+        if (packageInfo != null) {
+            versionName = packageInfo.versionName;
+            versionCode = packageInfo.versionCode;
+        }
+    }
+
+    /**
+     * Releases the reserved memory and closes the file. No report is written until the writer is armed again.
+     */
+    public synchronized void disarm() {
+        IOUtils.safeClose(file);
+        file = null;
+        ballast = null;
+        buffer = null;
+        written = false;
+    }
+
+    /**
+     * Turns a non empty emergency report into a report stub, which is picked up by the {@link me.wimanacra.util.ApplicationStartupProcessor}.
+     */
+    private void recover(@NonNull File emergencyFile) {
+        if (emergencyFile.length() == 0) {
+            return;
+        }
+        final File stub = new File(new ReportLocator(context).getUnapprovedFolder(), emergencyFile.lastModified() + ACRAConstants.STUBFILE_EXTENSION);
+        if (emergencyFile.renameTo(stub)) {
+            ACRA.log.i(ACRA.LOG_TAG, "Recovered emergency report " + stub);
+        } else {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not recover emergency report " + emergencyFile);
+        }
+    }
+
+    /**
+     * Releases the reserved memory and writes a minimal report. Only the first call per process writes a report.
+     *
+     * @param thread    thread the error occurred on.
+     * @param throwable the error.
+     */
+    public synchronized void write(@Nullable Thread thread, @NonNull Throwable throwable) {
+        if (file == null || written) {
+            return;
+        }
+        written = true;
+        ballast = null;
+        try {
+            position = 0;
+            truncated = false;
+            final Runtime runtime = Runtime.getRuntime();
+            date.setTime(System.currentTimeMillis());
+
+            writeAscii("{\"");
+            writeAscii(ReportField.REPORT_ID.name());
+            writeAscii("\":");
+            writeString(reportId);
+            writeAscii(",\"");
+            writeAscii(ReportField.USER_CRASH_DATE.name());
+            writeAscii("\":");
+            writeString(dateFormat.format(date));
+            if (versionName != null) {
+                writeAscii(",\"");
+                writeAscii(ReportField.APP_VERSION_NAME.name());
+                writeAscii("\":");
+                writeString(versionName);
+            }
+            writeAscii(",\"");
+            writeAscii(ReportField.APP_VERSION_CODE.name());
+            writeAscii("\":");
+            writeNumber(versionCode);
+            // uncaught errors are never silent
+            writeAscii(",\"");
+            writeAscii(ReportField.IS_SILENT.name());
+            writeAscii("\":false,\"");
+            writeAscii(ReportField.STACK_TRACE_HASH.name());
+            writeAscii("\":\"");
+            writeHex(getStackTraceHash(throwable));
+            writeAscii("\",\"");
+            writeAscii(ReportField.CUSTOM_DATA.name());
+            writeAscii("\":{\"Runtime.maxMemory\":");
+            writeNumber(runtime.maxMemory());
+            writeAscii(",\"Runtime.totalMemory\":");
+            writeNumber(runtime.totalMemory());
+            writeAscii(",\"Runtime.freeMemory\":");
+            writeNumber(runtime.freeMemory());
+            writeAscii("}");
+            if (thread != null) {
+                writeAscii(",\"");
+                writeAscii(ReportField.THREAD_DETAILS.name());
+                writeAscii("\":{\"id\":");
+                writeNumber(thread.getId());
+                writeAscii(",\"name\":");
+                writeString(thread.getName());
+                writeAscii(",\"priority\":");
+                writeNumber(thread.getPriority());
+                writeAscii("}");
+            }
+            // the stack trace goes last, it is the only part which may have to be truncated
+            writeAscii(",\"");
+            writeAscii(ReportField.STACK_TRACE.name());
+            writeAscii("\":\"");
+            writeStackTrace(throwable);
+            writeAscii("\"}");
+
+            file.seek(0);
+            file.write(buffer, 0, position);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not write emergency report", e);
+        }
+    }
+
+    /**
+     * Drops the emergency report, because the regular report (or its stub) has been persisted.
+     */
+    public synchronized void discard() {
+        if (file == null || !written) {
+            return;
+        }
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not discard emergency report", e);
+        }
+    }
+
+    /**
+     * Computes the same hash as the {@link ReportField#STACK_TRACE_HASH} collector, which hashes the concatenated
+     * class and method names of all stack frames, without concatenating them.
+     */
+    private static int getStackTraceHash(@NonNull Throwable throwable) {
+        int hash = 0;
+        Throwable cause = throwable;
+        while (cause != null) {
+            for (StackTraceElement element : cause.getStackTrace()) {
+                hash = updateHash(hash, element.getClassName());
+                hash = updateHash(hash, element.getMethodName());
+            }
+            cause = cause.getCause();
+        }
+        return hash;
+    }
+
+    /**
+     * @return the hash of a string continued with the given characters, as in {@link String#hashCode()}.
+     */
+    private static int updateHash(int hash, @NonNull String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return hash;
+    }
+
+    private void writeStackTrace(@NonNull Throwable throwable) {
+        Throwable cause = throwable;
+        boolean first = true;
+        while (cause != null && !truncated) {
+            if (!first) {
+                writeEscaped("Caused by: ");
+            }
+            first = false;
+            writeEscaped(cause.getClass().getName());
+            final String message = cause.getMessage();
+            if (message != null) {
+                writeEscaped(": ");
+                writeEscaped(message);
+            }
+            writeEscaped("\n");
+            for (StackTraceElement element : cause.getStackTrace()) {
+                if (truncated) {
+                    break;
+                }
+                writeEscaped("\tat ");
+                writeEscaped(element.getClassName());
+                writeEscaped(".");
+                writeEscaped(element.getMethodName());
+                writeEscaped("(");
+                final String fileName = element.getFileName();
+                writeEscaped(fileName != null ? fileName : "Unknown Source");
+                if (element.getLineNumber() >= 0) {
+                    writeEscaped(":");
+                    writeNumberEscaped(element.getLineNumber());
+                }
+                writeEscaped(")\n");
+            }
+            cause = cause.getCause();
+        }
+    }
+
+    /**
+     * @return if the given number of bytes fits into the buffer. Otherwise the report is marked as truncated.
+     */
+    private boolean hasRoom(int size) {
+        if (buffer.length - position < size) {
+            truncated = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void writeAscii(@NonNull String s) {
+        // structural output fits, room for it is kept free by writeEscaped, checking is only a safeguard
+        if (!hasRoom(s.length())) {
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeString(@NonNull String s) {
+        writeAscii("\"");
+        writeEscaped(s, Math.min(position + MAX_STRING_SIZE, buffer.length - ACRAConstants.EMERGENCY_BUFFER_RESERVE));
+        writeAscii("\"");
+    }
+
+    private void writeNumber(long value) {
+        if (!hasRoom(MAX_NUMBER_SIZE)) {
+            return;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer[position++] = (byte) ('0' + (value / divisor) % 10);
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Writes a value in hexadecimal without leading zeros, as {@link Integer#toHexString(int)} does.
+     */
+    private void writeHex(int value) {
+        if (!hasRoom(8)) {
+            return;
+        }
+        int shift = 28;
+        while (shift > 0 && (value >>> shift) == 0) {
+            shift -= 4;
+        }
+        for (; shift >= 0; shift -= 4) {
+            buffer[position++] = (byte) Character.forDigit((value >>> shift) & 0xF, 16);
+        }
+    }
+
+    private void writeNumberEscaped(long value) {
+        if (buffer.length - position < ACRAConstants.EMERGENCY_BUFFER_RESERVE) {
+            truncated = true;
+            return;
+        }
+        writeNumber(value);
+    }
+
+    /**
+     * Writes the UTF-8 encoding of a JSON string value. Stops writing once the buffer is nearly full,
+     * keeping enough room to close the JSON document.
+     */
+    private void writeEscaped(@NonNull String s) {
+        if (!writeEscaped(s, buffer.length - ACRAConstants.EMERGENCY_BUFFER_RESERVE)) {
+            truncated = true;
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoding of a JSON string value, without writing beyond the given position.
+     *
+     * @return if the whole string has been written.
+     */
+    private boolean writeEscaped(@NonNull String s, int limit) {
+        for (int i = 0; i < s.length(); i++) {
+            // an escaped or encoded character takes up to six bytes
+            if (limit - position < 6) {
+                return false;
+            }
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c == '\n') {
+                buffer[position++] = '\\';
+                buffer[position++] = 'n';
+            } else if (c == '\t') {
+                buffer[position++] = '\\';
+                buffer[position++] = 't';
+            } else if (c < 0x20) {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = (byte) Character.forDigit(c >> 4, 16);
+                buffer[position++] = (byte) Character.forDigit(c & 0xF, 16);
+            } else if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.model.Element;
+import me.wimanacra.util.IOUtils;
+import me.wimanacra.util.StreamingJsonReader;
+
+import org.json.JSONException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A string value of a stored report, which is read from the report file each time it is used.
+ * If the file has been changed or deleted in the meantime, the value is {@link ACRAConstants#NOT_AVAILABLE}.
+ */
+final class LazyStringElement implements Element {
+    /**
+     * Size of a value which is stored as quoted JSON string.
+     */
+    static final int JSON_STRING = -1;
+
+    private final File file;
+    private final long fileLength;
+    private final long lastModified;
+    private final long offset;
+    private final int size;
+
+    /**
+     * @param file   report file.
+     * @param offset offset of the value in the uncompressed content of the file.
+     * @param size   size of the UTF-8 encoded value in bytes, or {@link #JSON_STRING} if the value is a JSON string starting with its opening quote.
+     */
+    LazyStringElement(@NonNull File file, long offset, int size) {
+        this.file = file;
+        this.fileLength = file.length();
+        this.lastModified = file.lastModified();
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public Object value() {
+        return read();
+    }
+
+    @Override
+    public String[] flatten() {
+        return new String[]{read()};
+    }
+
+    @Override
+    public String toString() {
+        return read();
+    }
+
+    @NonNull
+    private String read() {
+        if (file.length() != fileLength || file.lastModified() != lastModified) {
+            ACRA.log.w(ACRA.LOG_TAG, "Report file " + file + " has changed since it was loaded");
+            return ACRAConstants.NOT_AVAILABLE.toString();
+        }
+        InputStream in = null;
+        try {
+            in = CrashReportPersister.open(file);
+            long skipped = 0;
+            while (skipped < offset) {
+                final long count = in.skip(offset - skipped);
+                if (count <= 0) {
+                    throw new EOFException();
+                }
+                skipped += count;
+            }
+            if (size == JSON_STRING) {
+                return new StreamingJsonReader(in).nextString();
+            }
+            final byte[] bytes = new byte[size];
+            new DataInputStream(in).readFully(bytes);
+            return new String(bytes, ACRAConstants.UTF8);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read value from report file " + file, e);
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read value from report file " + file, e);
+        } finally {
+            IOUtils.safeClose(in);
+        }
+        return ACRAConstants.NOT_AVAILABLE.toString();
+    }
+}
@@ -0,0 +1,531 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.util.IOUtils;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the stored reports, so they can be listed, ordered and filtered without scanning the report folders.
+ * <p>
+ * The index is an append-only log of added and removed reports, which is shared by all processes of the app.
+ * Each process only replays the lines which have been appended since it last read the log.
+ * Once most lines of the log are obsolete, it is compacted. If it is missing or unreadable, it is rebuilt from the report folders.
+ * Reports must therefore be added, moved and deleted through the index. As a process can be killed between storing a
+ * report and recording it, and appends are not synced, the index is also reconciled with the report folders on startup,
+ * in the background unless the index has been marked dirty by a store which did not complete.
+ * </p>
+ */
+public final class ReportIndex {
+
+    private static final String FOLDER_NAME = "ACRA-index";
+    private static final String FILE_NAME = "reports";
+    private static final String LOCK_FILE_NAME = "reports.lock";
+    private static final String DIRTY_FILE_NAME = "reports.dirty";
+    private static final char SEPARATOR = '\t';
+    private static final String ADD = "+";
+    private static final String REMOVE = "-";
+    // the log starts with its generation, which changes whenever it is rewritten
+    private static final String GENERATION_PREFIX = "#";
+    private static final int HEADER_SIZE = GENERATION_PREFIX.length() + 16 + 1;
+    private static final int COMPACTION_MIN_LINES = 64;
+
+    private static ReportIndex instance;
+
+    private final File unapprovedFolder;
+    private final File approvedFolder;
+    private final File file;
+    private final File lockFile;
+    private final File dirtyFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private long generation;
+    // bytes and lines of the log which have been replayed
+    private long offset;
+    private int lines;
+
+    @NonNull
+    public static synchronized ReportIndex getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ReportIndex(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Use {@link #getInstance(Context)}. Separate instances share the index files, like separate processes.
+     */
+    ReportIndex(@NonNull Context context) {
+        final ReportLocator reportLocator = new ReportLocator(context);
+        unapprovedFolder = reportLocator.getUnapprovedFolder();
+        approvedFolder = reportLocator.getApprovedFolder();
+        final File folder = context.getDir(FOLDER_NAME, Context.MODE_PRIVATE);
+        file = new File(folder, FILE_NAME);
+        lockFile = new File(folder, LOCK_FILE_NAME);
+        dirtyFile = new File(folder, DIRTY_FILE_NAME);
+    }
+
+    /**
+     * @param approved if approved or unapproved reports should be returned.
+     * @return the reports, oldest first.
+     */
+    @NonNull
+    public synchronized List<Entry> getReports(boolean approved) {
+        final FileLock lock = lock();
+        try {
+            update();
+            final List<Entry> result = new ArrayList<Entry>();
+            for (Entry entry : entries.values()) {
+                if (entry.approved == approved) {
+                    result.add(entry);
+                }
+            }
+            Collections.sort(result, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry lhs, Entry rhs) {
+                    return lhs.timestamp < rhs.timestamp ? -1 : (lhs.timestamp == rhs.timestamp ? 0 : 1);
+                }
+            });
+            return result;
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Records a report which has just been stored.
+     * If the report has been rewritten, it keeps its position in the order of reports.
+     *
+     * @param report         the report file.
+     * @param stackTraceHash hash of the stack trace of the report, if known.
+     */
+    public synchronized void add(@NonNull File report, @Nullable String stackTraceHash) {
+        final FileLock lock = lock();
+        try {
+            update();
+            final Entry previous = entries.get(report.getPath());
+            final Entry entry = new Entry(report, approvedFolder.equals(report.getParentFile()), new CrashReportFileNameParser().isSilent(report.getName()),
+                    previous != null ? previous.timestamp : report.lastModified(), report.length(),
+                    stackTraceHash == null && previous != null ? previous.stackTraceHash : stackTraceHash);
+            append(toLine(entry));
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Records that a report has been renamed, e.g. from the unapproved to the approved folder.
+     *
+     * @param from the old report file.
+     * @param to   the new report file.
+     */
+    public synchronized void move(@NonNull File from, @NonNull File to) {
+        final FileLock lock = lock();
+        try {
+            update();
+            final Entry entry = entries.get(from.getPath());
+            final Entry moved = entry != null
+                    ? new Entry(to, approvedFolder.equals(to.getParentFile()), entry.silent, entry.timestamp, entry.size, entry.stackTraceHash)
+                    : new Entry(to, approvedFolder.equals(to.getParentFile()), new CrashReportFileNameParser().isSilent(to.getName()), to.lastModified(), to.length(), null);
+            append(toRemoveLine(from) + toLine(moved));
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Deletes a report and removes it from the index.
+     *
+     * @param report the report file.
+     */
+    public synchronized void delete(@NonNull File report) {
+        if (!report.delete() && report.exists()) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not delete error report : " + report);
+            return;
+        }
+        final FileLock lock = lock();
+        try {
+            update();
+            append(toRemoveLine(report));
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the content of the report folders,
+     * e.g. after reports have been added by other means than {@link #add(File, String)}.
+     */
+    public synchronized void rebuild() {
+        final FileLock lock = lock();
+        try {
+            rebuildLocked();
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * @return if the index may lack reports, because it is missing or a report may have been stored without being added.
+     * @see #markDirty()
+     */
+    public boolean needsReconcile() {
+        return !file.exists() || dirtyFile.exists();
+    }
+
+    /**
+     * Marks that a report is about to be stored. The mark is removed with {@link #markClean()} once the report has been
+     * added, so a mark left behind by a killed process shows that {@link #reconcile(List, List)} is needed.
+     */
+    public void markDirty() {
+        try {
+            if (!dirtyFile.createNewFile() && ACRA.DEV_LOGGING) {
+                ACRA.log.d(ACRA.LOG_TAG, "Report index is already marked dirty");
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not mark report index dirty", e);
+        }
+    }
+
+    /**
+     * Removes the mark set by {@link #markDirty()}.
+     */
+    public void markClean() {
+        if (!dirtyFile.delete() && dirtyFile.exists()) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not mark report index clean");
+        }
+    }
+
+    /**
+     * Compares the index with the reports found in the report folders.
+     * Reports which are missing from the index are added, and entries of reports which no longer exist are removed.
+     *
+     * @param unapprovedReports the reports in the unapproved folder.
+     * @param approvedReports   the reports in the approved folder.
+     */
+    public synchronized void reconcile(@NonNull List<File> unapprovedReports, @NonNull List<File> approvedReports) {
+        final FileLock lock = lock();
+        try {
+            update();
+            final Set<String> paths = new HashSet<String>();
+            boolean changed = reconcile(unapprovedReports, false, paths);
+            changed |= reconcile(approvedReports, true, paths);
+            for (final Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                final File report = iterator.next().file;
+                // a report may have been stored since the folders were listed
+                if (!paths.contains(report.getPath()) && !report.exists()) {
+                    if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Removing deleted report from index : " + report);
+                    iterator.remove();
+                    changed = true;
+                }
+            }
+            if (changed) {
+                write();
+            }
+            markClean();
+        } finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * @param paths receives the paths of the reports.
+     * @return if a report has been added to the index.
+     */
+    private boolean reconcile(@NonNull List<File> reports, boolean approved, @NonNull Set<String> paths) {
+        boolean changed = false;
+        for (File report : reports) {
+            paths.add(report.getPath());
+            // a report may have been deleted since the folders were listed
+            if (!entries.containsKey(report.getPath()) && report.exists()) {
+                ACRA.log.w(ACRA.LOG_TAG, "Adding report missing from index : " + report);
+                put(readEntry(report, approved));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void rebuildLocked() {
+        if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Rebuilding report index");
+        entries.clear();
+        for (File report : ReportLocator.listFiles(unapprovedFolder, ACRAConstants.REPORTFILE_EXTENSION)) {
+            put(readEntry(report, false));
+        }
+        for (File report : ReportLocator.listFiles(approvedFolder, ACRAConstants.REPORTFILE_EXTENSION)) {
+            put(readEntry(report, true));
+        }
+        write();
+    }
+
+    /**
+     * Creates the entry of a report which has not been recorded, from the header of the report.
+     * If the header cannot be read, the silent flag is taken from the file name.
+     */
+    @NonNull
+    private static Entry readEntry(@NonNull File report, boolean approved) {
+        try {
+            final BinaryReportFormat.Header header = CrashReportPersister.loadHeader(report);
+            return new Entry(report, approved, header.silent, header.timestamp, report.length(),
+                    header.stackTraceHash.length() > 0 ? header.stackTraceHash : null);
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read header of report " + report, e);
+        } catch (JSONException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read header of report " + report, e);
+        }
+        return new Entry(report, approved, new CrashReportFileNameParser().isSilent(report.getName()), report.lastModified(), report.length(), null);
+    }
+
+    /**
+     * Replays the lines which have been appended to the log since it was last read.
+     */
+    private void update() {
+        if (!file.exists()) {
+            rebuildLocked();
+            return;
+        }
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            final long length = in.length();
+            final byte[] header = new byte[HEADER_SIZE];
+            in.readFully(header);
+            final long fileGeneration = parseGeneration(new String(header, 0, HEADER_SIZE - 1, ACRAConstants.UTF8));
+            if (fileGeneration != generation || length < offset) {
+                // the log has been rewritten
+                entries.clear();
+                generation = fileGeneration;
+                offset = HEADER_SIZE;
+                lines = 0;
+            }
+            if (length > offset) {
+                final byte[] data = new byte[(int) (length - offset)];
+                in.seek(offset);
+                in.readFully(data);
+                int start = 0;
+                for (int i = 0; i < data.length; i++) {
+                    if (data[i] == '\n') {
+                        apply(new String(data, start, i - start, ACRAConstants.UTF8));
+                        start = i + 1;
+                    }
+                }
+                // an incomplete last line is read again next time
+                offset += start;
+            }
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not read report index", e);
+            rebuildLocked();
+        } finally {
+            IOUtils.safeClose(in);
+        }
+    }
+
+    private void apply(@NonNull String line) {
+        lines++;
+        final String[] parts = line.split(String.valueOf(SEPARATOR), -1);
+        try {
+            if (parts.length == 7 && ADD.equals(parts[0])) {
+                final boolean approved = "1".equals(parts[1]);
+                put(new Entry(new File(approved ? approvedFolder : unapprovedFolder, parts[2]), approved, "1".equals(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5]), parts[6].length() == 0 ? null : parts[6]));
+                return;
+            } else if (parts.length == 3 && REMOVE.equals(parts[0])) {
+                entries.remove(new File("1".equals(parts[1]) ? approvedFolder : unapprovedFolder, parts[2]).getPath());
+                return;
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        ACRA.log.w(ACRA.LOG_TAG, "Ignoring malformed report index entry : " + line);
+    }
+
+    private void put(@NonNull Entry entry) {
+        entries.put(entry.file.getPath(), entry);
+    }
+
+    private void append(@NonNull String text) {
+        OutputStream out = null;
+        try {
+            // terminate an incomplete line left behind by an interrupted append, so that it is dropped on its own
+            final String separated = file.length() > offset ? '\n' + text : text;
+            out = new FileOutputStream(file, true);
+            out.write(separated.getBytes(ACRAConstants.UTF8));
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not write report index", e);
+        } finally {
+            IOUtils.safeClose(out);
+        }
+        update();
+        if (lines > COMPACTION_MIN_LINES && lines > 2 * entries.size()) {
+            write();
+        }
+    }
+
+    /**
+     * Rewrites the log with one line per report.
+     */
+    private void write() {
+        final long newGeneration = Math.max(System.currentTimeMillis(), generation + 1);
+        final StringBuilder builder = new StringBuilder(GENERATION_PREFIX).append(String.format("%016x", newGeneration)).append('\n');
+        for (Entry entry : entries.values()) {
+            builder.append(toLine(entry));
+        }
+        final File temp = new File(file.getPath() + ACRAConstants.TEMPFILE_EXTENSION);
+        OutputStream out = null;
+        try {
+            final byte[] bytes = builder.toString().getBytes(ACRAConstants.UTF8);
+            out = new FileOutputStream(temp);
+            out.write(bytes);
+            out.close();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+            generation = newGeneration;
+            offset = bytes.length;
+            lines = entries.size();
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not write report index", e);
+        } finally {
+            IOUtils.safeClose(out);
+        }
+    }
+
+    @NonNull
+    private static String toLine(@NonNull Entry entry) {
+        return ADD + SEPARATOR + (entry.approved ? "1" : "0") + SEPARATOR + entry.file.getName() + SEPARATOR + (entry.silent ? "1" : "0")
+                + SEPARATOR + entry.timestamp + SEPARATOR + entry.size + SEPARATOR + (entry.stackTraceHash == null ? "" : entry.stackTraceHash) + '\n';
+    }
+
+    @NonNull
+    private String toRemoveLine(@NonNull File report) {
+        return REMOVE + SEPARATOR + (approvedFolder.equals(report.getParentFile()) ? "1" : "0") + SEPARATOR + report.getName() + '\n';
+    }
+
+    private static long parseGeneration(@NonNull String header) throws IOException {
+        if (!header.startsWith(GENERATION_PREFIX)) {
+            throw new IOException("Invalid report index header " + header);
+        }
+        try {
+            return Long.parseLong(header.substring(GENERATION_PREFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid report index header " + header);
+        }
+    }
+
+    /**
+     * Locks the log against other processes. Threads of this process are held off by synchronization.
+     *
+     * @return the lock, or null if locking is not possible.
+     */
+    @Nullable
+    private FileLock lock() {
+        RandomAccessFile lockAccess = null;
+        try {
+            lockAccess = new RandomAccessFile(lockFile, "rw");
+            return lockAccess.getChannel().lock();
+        } catch (IOException e) {
+            ACRA.log.w(ACRA.LOG_TAG, "Could not lock report index", e);
+            IOUtils.safeClose(lockAccess);
+            return null;
+        }
+    }
+
+    private static void release(@Nullable FileLock lock) {
+        if (lock != null) {
+            // also releases the lock
+            IOUtils.safeClose(lock.channel());
+        }
+    }
+
+    /**
+     * A stored report.
+     */
+    public static final class Entry {
+        private final File file;
+        private final boolean approved;
+        private final boolean silent;
+        private final long timestamp;
+        private final long size;
+        @Nullable
+        private final String stackTraceHash;
+
+        private Entry(@NonNull File file, boolean approved, boolean silent, long timestamp, long size, @Nullable String stackTraceHash) {
+            this.file = file;
+            this.approved = approved;
+            this.silent = silent;
+            this.timestamp = timestamp;
+            this.size = size;
+            this.stackTraceHash = stackTraceHash;
+        }
+
+        @NonNull
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isApproved() {
+            return approved;
+        }
+
+        /**
+         * @return if the report has been declared explicitly silent.
+         */
+        public boolean isSilent() {
+            return silent;
+        }
+
+        /**
+         * @return the time the report has been stored, or of the crash for a report which has been indexed from its header,
+         * in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the size of the report file when it was stored.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        @Nullable
+        public String getStackTraceHash() {
+            return stackTraceHash;
+        }
+    }
+}
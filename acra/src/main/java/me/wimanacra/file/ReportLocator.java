@@ -4,7 +4,8 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import java.io.File;
-import java.util.Arrays;
+import java.io.FilenameFilter;
+import java.util.List;
 
 /**
  * Locates crash reports.
@@ -29,13 +30,12 @@ public final class ReportLocator {
         return context.getDir(UNAPPROVED_FOLDER_NAME, Context.MODE_PRIVATE);
     }
 
+    /**
+     * @return Unapproved reports sorted by creation time.
+     */
     @NonNull
     public File[] getUnapprovedReports() {
-        final File[] reports = getUnapprovedFolder().listFiles();
-        if (reports == null) {
-            return new File[0];
-        }
-        return reports;
+        return toFiles(ReportIndex.getInstance(context).getReports(false));
     }
 
     @NonNull
@@ -48,11 +48,29 @@ public final class ReportLocator {
      */
     @NonNull
     public File[] getApprovedReports() {
-        final File[] reports = getApprovedFolder().listFiles();
-        if (reports == null) {
+        return toFiles(ReportIndex.getInstance(context).getReports(true));
+    }
+
+    @NonNull
+    private static File[] toFiles(@NonNull List<ReportIndex.Entry> entries) {
+        final File[] files = new File[entries.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = entries.get(i).getFile();
+        }
+        return files;
+    }
+
+    @NonNull
+    static File[] listFiles(@NonNull File folder, @NonNull final String extension) {
+        final File[] files = folder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(extension);
+            }
+        });
+        if (files == null) {
             return new File[0];
         }
-        Arrays.sort(reports, new LastModifiedComparator());
-        return reports;
+        return files;
     }
 }
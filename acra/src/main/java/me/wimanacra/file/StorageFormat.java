@@ -0,0 +1,32 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+/**
+ * Encoding of stored report files. Reports are always sent as JSON, regardless of how they are stored.
+ * Stored reports of both formats can be read, whichever format is configured.
+ */
+public enum StorageFormat {
+    /**
+     * A JSON object with the {@link me.wimanacra.ReportField} names as keys.
+     */
+    JSON,
+    /**
+     * A compact binary encoding with {@link me.wimanacra.ReportField} ordinals as keys and length prefixed values.
+     * It is smaller and faster to read than JSON.
+     */
+    BINARY
+}
@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a report was stored by a newer version of ACRA, in a format this version cannot read.
+ * Unlike other failures to read a report, the report is intact and should be kept.
+ */
+public class UnsupportedReportVersionException extends IOException {
+
+    private static final long serialVersionUID = 4817620931593867702L;
+
+    public UnsupportedReportVersionException(String msg) {
+        super(msg);
+    }
+}
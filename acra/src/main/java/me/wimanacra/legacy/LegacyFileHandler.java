@@ -19,6 +19,7 @@ package me.wimanacra.legacy;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import me.wimanacra.file.ReportIndex;
 import me.wimanacra.prefs.PrefUtils;
 
 /**
@@ -42,6 +43,7 @@ public class LegacyFileHandler {
         if (!prefs.getBoolean(PREF__LEGACY_ALREADY_CONVERTED_TO_4_8_0, false)) {
             // If not then move reports to approved/unapproved folders and mark as converted.
             new ReportMigrator(context).migrate();
+            ReportIndex.getInstance(context).rebuild();
 
             // Mark as converted.
             final SharedPreferences.Editor editor = prefs.edit().putBoolean(PREF__LEGACY_ALREADY_CONVERTED_TO_4_8_0, true);
@@ -49,6 +51,7 @@ public class LegacyFileHandler {
         }
         if(!prefs.getBoolean(PREF__LEGACY_ALREADY_CONVERTED_TO_JSON, false)){
             new ReportConverter(context).convert();
+            ReportIndex.getInstance(context).rebuild();
 
             // Mark as converted.
             final SharedPreferences.Editor editor = prefs.edit().putBoolean(PREF__LEGACY_ALREADY_CONVERTED_TO_JSON, true);
@@ -24,6 +24,7 @@ import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportField;
 import me.wimanacra.file.CrashReportPersister;
 import me.wimanacra.file.ReportLocator;
+import me.wimanacra.file.UnsupportedReportVersionException;
 import me.wimanacra.model.BooleanElement;
 import me.wimanacra.model.ComplexElement;
 import me.wimanacra.collector.CrashReportData;
@@ -43,6 +44,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
 
 /**
@@ -83,8 +85,12 @@ class ReportConverter {
             } catch (Throwable e) {
                 try {
                     //If this succeeds the report has already been converted, happens e.g. on preference clear.
-                    persister.load(report);
+                    //No field is needed, the values are only checked for syntax.
+                    persister.load(report, EnumSet.noneOf(ReportField.class));
                     if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Tried to convert already converted report file " + report.getPath() + ". Ignoring");
+                } catch (UnsupportedReportVersionException t) {
+                    //Stored by a newer version, keep it.
+                    ACRA.log.w(ACRA.LOG_TAG, "Unable to read report file " + report.getPath() + ". Keeping it", t);
                 } catch (Throwable t) {
                     //File matches neither of the known formats, remove it.
                     ACRA.log.w(ACRA.LOG_TAG, "Unable to read report file " + report.getPath() + ". Deleting", e);
@@ -20,12 +20,14 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.support.annotation.NonNull;
 import me.wimanacra.ACRA;
+import me.wimanacra.builder.ReportDeduplicator;
 import me.wimanacra.collector.CrashReportData;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.config.DefaultRetryPolicy;
 import me.wimanacra.config.RetryPolicy;
 import me.wimanacra.file.CrashReportPersister;
-import me.wimanacra.util.IOUtils;
+import me.wimanacra.file.ReportIndex;
+import me.wimanacra.file.UnsupportedReportVersionException;
 import me.wimanacra.util.InstanceCreator;
 import org.json.JSONException;
 
@@ -45,6 +47,7 @@ final class ReportDistributor {
     private final Context context;
     private final ACRAConfiguration config;
     private final List<ReportSender> reportSenders;
+    private final ReportDeduplicator reportDeduplicator;
 
     /**
      * Creates a new {@link ReportDistributor} to try sending pending reports.
@@ -57,36 +60,48 @@ final class ReportDistributor {
         this.context = context;
         this.config = config;
         this.reportSenders = reportSenders;
+        this.reportDeduplicator = new ReportDeduplicator(context, config);
     }
 
     /**
      * Send report via all senders.
      *
      * @param reportFile    Report to send.
+     * @return false if the report was kept without trying to send it, because it was stored by a newer version of ACRA.
      */
-    public void distribute(@NonNull File reportFile) {
+    public boolean distribute(@NonNull File reportFile) {
 
         ACRA.log.i(ACRA.LOG_TAG, "Sending report " + reportFile );
         try {
             final CrashReportPersister persister = new CrashReportPersister();
+            // loaded completely, a lazily loaded value would be lost if the file changed before a sender reads it
             final CrashReportData previousCrashReport = persister.load(reportFile);
+            final int duplicateCount = reportDeduplicator.isEnabled() ? reportDeduplicator.attachCount(reportFile, previousCrashReport) : 0;
             sendCrashReport(previousCrashReport);
-            IOUtils.deleteReport(reportFile);
+            if (duplicateCount > 0) {
+                reportDeduplicator.onReportSent(reportFile, duplicateCount);
+            }
+            ReportIndex.getInstance(context).delete(reportFile);
+        } catch (UnsupportedReportVersionException e) {
+            // the report is intact, keep it in case the newer version is installed again
+            ACRA.log.w(ACRA.LOG_TAG, "Cannot read crash report " + reportFile + ", keeping it: " + e.getMessage());
+            return false;
         } catch (RuntimeException e) {
             ACRA.log.e(ACRA.LOG_TAG, "Failed to send crash reports for " + reportFile, e);
-            IOUtils.deleteReport(reportFile);
+            ReportIndex.getInstance(context).delete(reportFile);
         } catch (IOException e) {
             ACRA.log.e(ACRA.LOG_TAG, "Failed to load crash report for " + reportFile, e);
-            IOUtils.deleteReport(reportFile);
+            ReportIndex.getInstance(context).delete(reportFile);
         } catch (JSONException e) {
             ACRA.log.e(ACRA.LOG_TAG, "Failed to load crash report for " + reportFile, e);
-            IOUtils.deleteReport(reportFile);
+            ReportIndex.getInstance(context).delete(reportFile);
         }catch (ReportSenderException e) {
             ACRA.log.e(ACRA.LOG_TAG, "Failed to send crash report for " + reportFile, e);
             // An issue occurred while sending this report but we can still try to
             // send other reports. Report sending is limited by ACRAConstants.MAX_SEND_REPORTS
             // so there's not much to fear about overloading a failing server.
         }
+        return true;
     }
 
     /**
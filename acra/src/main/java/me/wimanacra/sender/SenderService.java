@@ -23,7 +23,7 @@ import android.support.annotation.Nullable;
 import me.wimanacra.ACRA;
 import me.wimanacra.ACRAConstants;
 import me.wimanacra.config.ACRAConfiguration;
-import me.wimanacra.file.CrashReportFileNameParser;
+import me.wimanacra.file.ReportIndex;
 import me.wimanacra.file.ReportLocator;
 import me.wimanacra.util.InstanceCreator;
 
@@ -69,15 +69,14 @@ public class SenderService extends IntentService {
             }
 
             // Get approved reports
-            final File[] reports = locator.getApprovedReports();
+            final List<ReportIndex.Entry> reports = ReportIndex.getInstance(this).getReports(true);
 
             final ReportDistributor reportDistributor = new ReportDistributor(this, config, senderInstances);
 
             // Iterate over approved reports and send via all Senders.
             int reportsSentCount = 0; // Use to rate limit sending
-            final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
-            for (final File report : reports) {
-                if (onlySendSilentReports && !fileNameParser.isSilent(report.getName())) {
+            for (final ReportIndex.Entry report : reports) {
+                if (onlySendSilentReports && !report.isSilent()) {
                     continue;
                 }
 
@@ -85,8 +84,9 @@ public class SenderService extends IntentService {
                     break; // send only a few reports to avoid overloading the network
                 }
 
-                reportDistributor.distribute(report);
-                reportsSentCount++;
+                if (reportDistributor.distribute(report.getFile())) {
+                    reportsSentCount++;
+                }
             }
         } catch (Exception e) {
             ACRA.log.e(ACRA.LOG_TAG, "", e);
@@ -111,9 +111,13 @@ public class SenderService extends IntentService {
     private void markReportsAsApproved() {
         if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Mark all pending reports as approved.");
 
-        for (File report : locator.getUnapprovedReports()) {
+        final ReportIndex reportIndex = ReportIndex.getInstance(this);
+        for (ReportIndex.Entry entry : reportIndex.getReports(false)) {
+            final File report = entry.getFile();
             final File approvedReport = new File(locator.getApprovedFolder(), report.getName());
-            if (!report.renameTo(approvedReport)) {
+            if (report.renameTo(approvedReport)) {
+                reportIndex.move(report, approvedReport);
+            } else {
                 ACRA.log.w(ACRA.LOG_TAG, "Could not rename approved report from " + report + " to " + approvedReport);
             }
         }
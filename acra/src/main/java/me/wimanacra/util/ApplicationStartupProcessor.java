@@ -6,16 +6,20 @@ import android.content.pm.PackageInfo;
 import android.support.annotation.NonNull;
 import android.widget.Toast;
 import me.wimanacra.ACRA;
+import me.wimanacra.ACRAConstants;
 import me.wimanacra.ReportingInteractionMode;
 import me.wimanacra.config.ACRAConfiguration;
 import me.wimanacra.file.BulkReportDeleter;
 import me.wimanacra.file.CrashReportFileNameParser;
+import me.wimanacra.file.ReportIndex;
 import me.wimanacra.file.ReportLocator;
 import me.wimanacra.prefs.PrefUtils;
 import me.wimanacra.prefs.SharedPreferencesFactory;
 import me.wimanacra.sender.SenderServiceStarter;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Looks for any existing reports and starts sending them.
@@ -30,6 +34,102 @@ public final class ApplicationStartupProcessor {
         this.config = config;
     }
 
+    /**
+     * Checks the report folders in a single pass: stubs of reports whose collection was interrupted (e.g. because the
+     * process was killed) are turned into partial reports, files left behind by an interrupted store are deleted, and
+     * the report index is reconciled with the reports found.
+     * The pass only blocks if the index is missing or a report may have been stored without being indexed,
+     * otherwise it runs in the background.
+     */
+    public void checkStoredReports() {
+        // files which are written by this process from now on must not be taken for left overs
+        final long start = System.currentTimeMillis();
+        final Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                checkStoredReports(start);
+            }
+        };
+        if (ReportIndex.getInstance(context).needsReconcile()) {
+            check.run();
+        } else {
+            new DaemonThreadFactory("ACRA-startup", Thread.MIN_PRIORITY).newThread(check).start();
+        }
+    }
+
+    private void checkStoredReports(long start) {
+        final ReportLocator reportLocator = new ReportLocator(context);
+        final List<File> unapproved = new ArrayList<File>();
+        final List<File> approved = new ArrayList<File>();
+        final List<File> stubs = new ArrayList<File>();
+        listReportFolder(reportLocator.getUnapprovedFolder(), start, unapproved, stubs);
+        listReportFolder(reportLocator.getApprovedFolder(), start, approved, stubs);
+        recoverStubReports(stubs, reportLocator, unapproved, approved);
+        ReportIndex.getInstance(context).reconcile(unapproved, approved);
+    }
+
+    /**
+     * Sorts the files of a report folder into reports and stubs and deletes incomplete files.
+     * The report itself of an incomplete file is either complete under its final name, or has not been stored at all.
+     */
+    private static void listReportFolder(@NonNull File folder, long start, @NonNull List<File> reports, @NonNull List<File> stubs) {
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(ACRAConstants.REPORTFILE_EXTENSION)) {
+                reports.add(file);
+            } else if (file.lastModified() >= start) {
+                if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Skipping report file which is being written : " + file);
+            } else if (name.endsWith(ACRAConstants.STUBFILE_EXTENSION)) {
+                stubs.add(file);
+            } else if (name.endsWith(ACRAConstants.TEMPFILE_EXTENSION)) {
+                if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Deleting incomplete report " + file);
+                if (!file.delete()) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Could not delete incomplete report : " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns stubs into partial reports. A stub is dropped if its complete report has been written.
+     */
+    private void recoverStubReports(@NonNull List<File> stubs, @NonNull ReportLocator reportLocator, @NonNull List<File> unapproved, @NonNull List<File> approved) {
+        if (stubs.isEmpty()) {
+            return;
+        }
+
+        final SharedPreferences prefs = new SharedPreferencesFactory(context, config).create();
+        final boolean approveAll = config.reportingInteractionMode() == ReportingInteractionMode.SILENT
+                || config.reportingInteractionMode() == ReportingInteractionMode.TOAST
+                || prefs.getBoolean(ACRA.PREF_ALWAYS_ACCEPT, false);
+        final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
+        for (final File stub : stubs) {
+            final String stubName = stub.getName();
+            final String reportName = stubName.substring(0, stubName.length() - ACRAConstants.STUBFILE_EXTENSION.length()) + ACRAConstants.REPORTFILE_EXTENSION;
+            final File report = new File(reportLocator.getUnapprovedFolder(), reportName);
+            final File approvedReport = new File(reportLocator.getApprovedFolder(), reportName);
+            if (report.exists() || approvedReport.exists()) {
+                // the report is indexed by the reconciliation, in case the process was killed before it was added to the index
+                if (!stub.delete()) {
+                    ACRA.log.w(ACRA.LOG_TAG, "Could not delete report stub : " + stub);
+                }
+                continue;
+            }
+            final boolean approve = approveAll || fileNameParser.isSilent(stubName);
+            final File destination = approve ? approvedReport : report;
+            if (ACRA.DEV_LOGGING) ACRA.log.d(ACRA.LOG_TAG, "Recovering partial report " + destination);
+            if (stub.renameTo(destination)) {
+                (approve ? approved : unapproved).add(destination);
+            } else {
+                ACRA.log.w(ACRA.LOG_TAG, "Could not recover report stub : " + stub);
+            }
+        }
+    }
+
     /**
      * Delete any old unsent reports if this is a newer version of the app than when we last started.
      */
@@ -66,14 +166,13 @@ public final class ApplicationStartupProcessor {
      */
     public void sendApprovedReports() {
 
-        final ReportLocator reportLocator = new ReportLocator(context);
-        final File[] reportFiles = reportLocator.getApprovedReports();
+        final List<ReportIndex.Entry> reports = ReportIndex.getInstance(context).getReports(true);
 
-        if (reportFiles.length == 0) {
+        if (reports.isEmpty()) {
             return; // There are no approved reports, so bail now.
         }
 
-        if (config.reportingInteractionMode() == ReportingInteractionMode.TOAST && hasNonSilentApprovedReports(reportFiles)) {
+        if (config.reportingInteractionMode() == ReportingInteractionMode.TOAST && hasNonSilentApprovedReports(reports)) {
             ToastSender.sendToast(context, config.resToastText(), Toast.LENGTH_LONG);
         }
 
@@ -92,10 +191,9 @@ public final class ApplicationStartupProcessor {
         return (packageInfo == null) ? 0 : packageInfo.versionCode;
     }
 
-    private boolean hasNonSilentApprovedReports(File[] reportFiles) {
-        final CrashReportFileNameParser fileNameParser = new CrashReportFileNameParser();
-        for (final File file : reportFiles) {
-            if (!fileNameParser.isSilent(file.getName())) {
+    private boolean hasNonSilentApprovedReports(@NonNull List<ReportIndex.Entry> reports) {
+        for (final ReportIndex.Entry report : reports) {
+            if (!report.isSilent()) {
                 return true;
             }
         }
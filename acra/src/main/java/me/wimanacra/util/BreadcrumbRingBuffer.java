@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed capacity ring buffer of breadcrumbs, which overwrites the oldest entries.
+ * <p>
+ * All storage is allocated up front. Recording takes a sequence number with a single atomic increment, claims the
+ * slot with a compare-and-set and publishes it seqlock style: the slot's sequence is odd while it is written and even
+ * once it is complete, so readers can detect and skip slots which are being overwritten concurrently. Only one writer
+ * can own a slot at a time; a writer which laps a slower writer on the same slot drops its breadcrumb.
+ * Recording never blocks and allocates nothing as long as the tag is a constant (e.g. a string literal or an enum value).
+ * </p>
+ */
+public final class BreadcrumbRingBuffer {
+
+    /**
+     * Value of breadcrumbs recorded without a value.
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final AtomicLongArray times;
+    private final AtomicLongArray values;
+    private final AtomicReferenceArray<Object> tags;
+
+    /**
+     * @param capacity minimum number of breadcrumbs to keep, rounded up to a power of two. 0 disables recording.
+     */
+    public BreadcrumbRingBuffer(int capacity) {
+        int size = capacity > 0 ? 1 : 0;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        times = new AtomicLongArray(size);
+        values = new AtomicLongArray(size);
+        tags = new AtomicReferenceArray<Object>(size);
+    }
+
+    /**
+     * Records a breadcrumb. Safe to call from any thread.
+     *
+     * @param tag   what happened. Should be a constant to avoid allocations.
+     * @param value an optional number describing the event, or {@link #NO_VALUE}.
+     */
+    public void record(@NonNull Object tag, long value) {
+        if (mask < 0) {
+            return;
+        }
+        final long sequence = next.getAndIncrement();
+        final int index = (int) (sequence & mask);
+        long current;
+        do {
+            current = sequences.get(index);
+            if ((current & 1) != 0 || current > 2 * sequence) {
+                // another writer still owns the slot, or a newer breadcrumb has already been written to it
+                return;
+            }
+        } while (!sequences.compareAndSet(index, current, 2 * sequence + 1));
+        times.set(index, System.currentTimeMillis());
+        values.set(index, value);
+        tags.set(index, tag);
+        sequences.set(index, 2 * sequence + 2);
+    }
+
+    /**
+     * @return a consistent copy of all complete breadcrumbs still in the buffer, oldest first.
+     */
+    @NonNull
+    public List<Breadcrumb> snapshot() {
+        final long end = next.get();
+        final long start = Math.max(0, end - (mask + 1));
+        final List<Breadcrumb> result = new ArrayList<Breadcrumb>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            final int index = (int) (sequence & mask);
+            final long before = sequences.get(index);
+            if (before != 2 * sequence + 2) {
+                // still being written or already overwritten
+                continue;
+            }
+            final Breadcrumb breadcrumb = new Breadcrumb(times.get(index), tags.get(index), values.get(index));
+            if (sequences.get(index) == before) {
+                result.add(breadcrumb);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A recorded breadcrumb.
+     */
+    public static final class Breadcrumb {
+        private final long time;
+        private final Object tag;
+        private final long value;
+
+        Breadcrumb(long time, Object tag, long value) {
+            this.time = time;
+            this.tag = tag;
+            this.value = value;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Object getTag() {
+            return tag;
+        }
+
+        public long getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that ACRA worker threads never keep a dying process alive.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final int priority;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * @param name  Prefix of the names of the created threads.
+     */
+    public DaemonThreadFactory(@NonNull String name) {
+        this(name, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * @param name      Prefix of the names of the created threads.
+     * @param priority  Priority of the created threads.
+     */
+    public DaemonThreadFactory(@NonNull String name, int priority) {
+        this.name = name;
+        this.priority = priority;
+    }
+
+    @NonNull
+    @Override
+    public Thread newThread(@NonNull Runnable runnable) {
+        final Thread thread = new Thread(runnable, name + '-' + count.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
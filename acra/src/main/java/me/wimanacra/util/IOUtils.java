@@ -16,23 +16,25 @@
 package me.wimanacra.util;
 
 import android.support.annotation.NonNull;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
-import android.text.TextUtils;
 
 import com.android.internal.util.Predicate;
 
 import me.wimanacra.ACRA;
 import me.wimanacra.ACRAConstants;
-import me.wimanacra.collections.BoundedLinkedList;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static me.wimanacra.ACRA.LOG_TAG;
 
@@ -50,6 +52,9 @@ public final class IOUtils {
     };
     private static final int NO_LIMIT = -1;
     private static final int READ_TIMEOUT = 3000;
+    private static final int LINE_BUFFER_SIZE = 256;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int POLL_INTERVAL = 20;
 
     private IOUtils() {
     }
@@ -119,19 +124,127 @@ public final class IOUtils {
      */
     @NonNull
     public static String streamToString(@NonNull InputStream input, Predicate<String> filter, int limit) throws IOException {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(input), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
+        final LineRingBuffer lines = new LineRingBuffer(limit);
         try {
-            String line;
-            final List<String> buffer = limit == NO_LIMIT ? new LinkedList<String>() : new BoundedLinkedList<String>(limit);
-            while ((line = reader.readLine()) != null) {
-                if (filter.apply(line)) {
-                    buffer.add(line);
+            readLines(input, lines, filter == DEFAULT_FILTER ? null : filter, null, NO_DEADLINE);
+        } finally {
+            safeClose(input);
+        }
+        return lines.tail(NO_LIMIT);
+    }
+
+    /**
+     * Splits an InputStream into lines and appends them to a buffer.
+     *
+     * @param filter   Predicate that should return false for lines which should be excluded, or null to skip decoding lines.
+     * @param required bytes which lines have to contain to be included, or null.
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) at which reading stops, or {@link #NO_DEADLINE}.
+     */
+    private static void readLines(@NonNull InputStream input, @NonNull LineRingBuffer lines,
+                                  @Nullable Predicate<String> filter, @Nullable byte[] required, long deadline) throws IOException {
+        final byte[] buffer = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
+        byte[] line = new byte[LINE_BUFFER_SIZE];
+        int lineLength = 0;
+        int read;
+        while ((read = read(input, buffer, deadline)) != -1) {
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    if (lineLength == 0) {
+                        // the whole line is in the read buffer
+                        appendLine(lines, buffer, lineStart, i - lineStart, filter, required);
+                    } else {
+                        line = append(line, lineLength, buffer, lineStart, i - lineStart);
+                        appendLine(lines, line, 0, lineLength + i - lineStart, filter, required);
+                        lineLength = 0;
+                    }
+                    lineStart = i + 1;
                 }
             }
-            return TextUtils.join("\n", buffer);
-        } finally {
-            safeClose(reader);
+            line = append(line, lineLength, buffer, lineStart, read - lineStart);
+            lineLength += read - lineStart;
+        }
+        if (lineLength > 0) {
+            appendLine(lines, line, 0, lineLength, filter, required);
+        }
+    }
+
+    /**
+     * Reads into a buffer. With a deadline, only the bytes which are already available are read, so this never blocks
+     * past the deadline. As the end of the stream cannot be told from a stream without available bytes without blocking,
+     * the stream is then read until the deadline.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream or at the deadline.
+     */
+    private static int read(@NonNull InputStream input, @NonNull byte[] buffer, long deadline) throws IOException {
+        if (deadline == NO_DEADLINE) {
+            return input.read(buffer);
+        }
+        while (true) {
+            final int available = input.available();
+            if (available > 0) {
+                return input.read(buffer, 0, Math.min(available, buffer.length));
+            }
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                return -1;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+
+    private static void appendLine(@NonNull LineRingBuffer lines, @NonNull byte[] bytes, int offset, int length,
+                                   @Nullable Predicate<String> filter, @Nullable byte[] required) throws UnsupportedEncodingException {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        if (required != null && !contains(bytes, offset, length, required)) {
+            return;
+        }
+        if (filter != null && !filter.apply(new String(bytes, offset, length, ACRAConstants.UTF8))) {
+            return;
         }
+        lines.append(bytes, offset, length);
+    }
+
+    /**
+     * Appends bytes to a growable array.
+     *
+     * @return the array, or a larger copy if it was too small.
+     */
+    @NonNull
+    private static byte[] append(@NonNull byte[] array, int length, @NonNull byte[] bytes, int offset, int count) {
+        if (length + count > array.length) {
+            final byte[] grown = new byte[Math.max(array.length * 2, length + count)];
+            System.arraycopy(array, 0, grown, 0, length);
+            array = grown;
+        }
+        System.arraycopy(bytes, offset, array, length, count);
+        return array;
+    }
+
+    /**
+     * @param bytes  buffer to search in.
+     * @param offset start of the searched range.
+     * @param length length of the searched range.
+     * @param text   bytes to search for.
+     * @return true if the range contains the text.
+     */
+    public static boolean contains(@NonNull byte[] bytes, int offset, int length, @NonNull byte[] text) {
+        outer:
+        for (int i = offset; i <= offset + length - text.length; i++) {
+            for (int j = 0; j < text.length; j++) {
+                if (bytes[i + j] != text[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -146,34 +259,163 @@ public final class IOUtils {
      */
     @NonNull
     public static String streamToStringNonBlockingRead(@NonNull InputStream input, Predicate<String> filter, int limit) throws IOException {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(input), ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES);
-        final NonBlockingBufferedReader nonBlockingReader = new NonBlockingBufferedReader(reader);
-        try {
-            final List<String> buffer = limit == NO_LIMIT ? new LinkedList<String>() : new BoundedLinkedList<String>(limit);
-            final long end = System.currentTimeMillis() + READ_TIMEOUT;
+        return streamToStringNonBlockingRead(input, filter, limit, SystemClock.elapsedRealtime() + READ_TIMEOUT);
+    }
+
+    /**
+     * Reads an InputStream into a string, waiting at most until a deadline.
+     *
+     * @param input    InputStream to read.
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) at which the lines read so far are returned.
+     * @return the String that was read.
+     * @throws IOException if the InputStream could not be read.
+     * @see #streamToStringNonBlockingRead(InputStream, Predicate, int, long)
+     */
+    @NonNull
+    public static String streamToStringNonBlockingRead(@NonNull InputStream input, long deadline) throws IOException {
+        return streamToStringNonBlockingRead(input, DEFAULT_FILTER, NO_LIMIT, deadline);
+    }
+
+    /**
+     * Reads an InputStream into a string on a shared background reader, waiting at most until a deadline.
+     * If the stream has not ended by then, the lines read so far are returned and the stream is read on
+     * until it ends or is closed, e.g. by destroying the process it belongs to.
+     *
+     * @param input    InputStream to read.
+     * @param filter   Predicate that should return false for lines which should be excluded.
+     * @param limit    the maximum number of lines to read (the last x lines are kept).
+     * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) at which the lines read so far are returned.
+     * @return the String that was read.
+     * @throws IOException if the InputStream could not be read.
+     */
+    @NonNull
+    public static String streamToStringNonBlockingRead(@NonNull InputStream input, @NonNull Predicate<String> filter, int limit, long deadline) throws IOException {
+        final PendingRead read = new PendingRead(input, filter == DEFAULT_FILTER ? null : filter, null, limit);
+        read.start();
+        return read.get(deadline);
+    }
+
+    /**
+     * Starts reading an InputStream on a shared background reader, so that several streams can be read concurrently.
+     *
+     * @param input InputStream to read.
+     * @param text  text which lines have to contain to be included (matched against the raw bytes), or null to include all lines.
+     * @param limit the maximum number of lines to read (the last x lines are kept).
+     * @return the read, which has to be completed with {@link PendingRead#get()} or {@link PendingRead#get(long)}.
+     */
+    @NonNull
+    public static PendingRead readInBackground(@NonNull InputStream input, @Nullable String text, int limit) throws UnsupportedEncodingException {
+        final PendingRead read = new PendingRead(input, null, text == null ? null : text.getBytes(ACRAConstants.UTF8), limit);
+        read.start();
+        return read;
+    }
+
+    public static void deleteReport(@NonNull File file) {
+        final boolean deleted = file.delete();
+        if (!deleted) {
+            ACRA.log.w(LOG_TAG, "Could not delete error report : " + file);
+        }
+    }
+
+    /**
+     * A stream which is being read on a shared background reader.
+     */
+    public static final class PendingRead {
+        private final InputStream input;
+        private final Predicate<String> filter;
+        private final byte[] required;
+        private final LineRingBuffer lines;
+        private Future<Void> future;
+
+        private PendingRead(@NonNull InputStream input, @Nullable Predicate<String> filter, @Nullable byte[] required, int limit) {
+            this.input = input;
+            this.filter = filter;
+            this.required = required;
+            this.lines = new LineRingBuffer(limit);
+        }
+
+        private void start() {
             try {
-                while ((System.currentTimeMillis() < end)) {
-                    final String line = nonBlockingReader.readLine();
-                    if (line == null) {
-                        break;
-                    }
-                    if (filter.apply(line)) {
-                        buffer.add(line);
+                future = StreamPump.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        read(NO_DEADLINE);
+                        return null;
                     }
-                }
+                });
+            } catch (RejectedExecutionException e) {
+                ACRA.log.w(LOG_TAG, "All stream readers are busy, stream is not read in the background");
+            }
+        }
+
+        private void read(long deadline) throws IOException {
+            try {
+                readLines(input, lines, filter, required, deadline);
+            } finally {
+                safeClose(input);
+            }
+        }
+
+        /**
+         * Waits until the stream has ended.
+         *
+         * @return the String that was read.
+         * @throws IOException if the InputStream could not be read.
+         */
+        @NonNull
+        public String get() throws IOException {
+            if (future == null) {
+                // no background reader was available
+                read(NO_DEADLINE);
+                return lines.tail(NO_LIMIT);
+            }
+            try {
+                future.get();
             } catch (InterruptedException e) {
                 if (ACRA.DEV_LOGGING) ACRA.log.d(LOG_TAG, "Interrupted while reading stream", e);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                rethrow(e);
             }
-            return TextUtils.join("\n", buffer);
-        } finally {
-            nonBlockingReader.close();
+            return lines.tail(NO_LIMIT);
         }
-    }
 
-    public static void deleteReport(@NonNull File file) {
-        final boolean deleted = file.delete();
-        if (!deleted) {
-            ACRA.log.w(LOG_TAG, "Could not delete error report : " + file);
+        /**
+         * Waits at most until a deadline. If the stream has not ended by then, the lines read so far are returned and the
+         * stream is read on until it ends or is closed, e.g. by destroying the process it belongs to.
+         *
+         * @param deadline Point in time ({@link SystemClock#elapsedRealtime()}) at which the lines read so far are returned.
+         * @return the String that was read.
+         * @throws IOException if the InputStream could not be read.
+         */
+        @NonNull
+        public String get(long deadline) throws IOException {
+            if (future == null) {
+                // no background reader was available, read on this thread until the deadline
+                read(deadline);
+                return lines.tail(NO_LIMIT);
+            }
+            try {
+                future.get(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (ACRA.DEV_LOGGING) ACRA.log.d(LOG_TAG, "Stream has not ended before the deadline, returning the lines read so far");
+            } catch (InterruptedException e) {
+                if (ACRA.DEV_LOGGING) ACRA.log.d(LOG_TAG, "Interrupted while reading stream", e);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                rethrow(e);
+            }
+            return lines.tail(NO_LIMIT);
+        }
+
+        private static void rethrow(@NonNull ExecutionException e) throws IOException {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
         }
     }
 }
@@ -25,6 +25,8 @@ import me.wimanacra.model.Element;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -51,6 +53,20 @@ public final class JsonUtils {
         return new JSONObject(map);
     }
 
+    /**
+     * Writes the report as JSON object directly to the stream, without building it in memory first.
+     * The stream is not closed.
+     */
+    public static void writeJson(CrashReportData data, OutputStream out) throws IOException {
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.beginObject();
+        for (Map.Entry<ReportField, Element> entry : data.entrySet()) {
+            writer.name(entry.getKey().name()).value(entry.getValue().value());
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
     public static CrashReportData toCrashReportData(JSONObject json) {
         CrashReportData data = new CrashReportData();
         for (Iterator<String> iterator = json.keys(); iterator.hasNext(); ) {
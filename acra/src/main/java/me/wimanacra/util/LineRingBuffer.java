@@ -0,0 +1,209 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Keeps the latest lines of a text as raw bytes.
+ * <p>
+ * Lines are stored one after another, wrapping around at the end of the buffer,
+ * together with a ring of line offsets. Appending drops the oldest lines when the line or byte limit is reached
+ * and only allocates when a growing buffer needs more room.
+ * The tail is decoded only when it is requested, in a single copy.
+ * </p>
+ */
+public final class LineRingBuffer {
+
+    private static final int INITIAL_BYTE_CAPACITY = 4 * ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES;
+    private static final int INITIAL_LINE_CAPACITY = 64;
+
+    private final int maxLines;
+    private final boolean growing;
+    private byte[] data;
+    private long[] lineStarts;
+    private int[] lineLengths;
+    private long written;
+    private long firstLine;
+    private long lineCount;
+
+    /**
+     * Creates a buffer which never allocates after construction.
+     *
+     * @param byteCapacity number of bytes the lines may occupy. Longer lines are truncated.
+     * @param maxLines     maximum number of lines kept.
+     */
+    public LineRingBuffer(int byteCapacity, int maxLines) {
+        this.maxLines = maxLines;
+        growing = false;
+        data = new byte[byteCapacity];
+        lineStarts = new long[maxLines];
+        lineLengths = new int[maxLines];
+    }
+
+    /**
+     * Creates a buffer which grows as needed to hold the last lines.
+     *
+     * @param maxLines maximum number of lines kept, or a negative value to keep all lines.
+     */
+    public LineRingBuffer(int maxLines) {
+        this.maxLines = maxLines;
+        growing = true;
+        data = new byte[INITIAL_BYTE_CAPACITY];
+        final int lineCapacity = maxLines < 0 ? INITIAL_LINE_CAPACITY : Math.min(maxLines, INITIAL_LINE_CAPACITY);
+        lineStarts = new long[lineCapacity];
+        lineLengths = new int[lineCapacity];
+    }
+
+    /**
+     * Appends a line.
+     *
+     * @param bytes  buffer containing the line, without line terminator.
+     * @param offset start of the line in bytes.
+     * @param length length of the line.
+     */
+    public synchronized void append(@NonNull byte[] bytes, int offset, int length) {
+        if (maxLines == 0 || (!growing && data.length == 0)) {
+            return;
+        }
+        if (!growing && length > data.length) {
+            offset += length - data.length;
+            length = data.length;
+        }
+        if (lineCount - firstLine == lineStarts.length) {
+            if (growing && (maxLines < 0 || lineStarts.length < maxLines)) {
+                growLines();
+            } else {
+                firstLine++;
+            }
+        }
+        while (written + length - oldestStart() > data.length) {
+            if (growing) {
+                growData(written + length - oldestStart());
+            } else {
+                firstLine++;
+            }
+        }
+
+        final int index = (int) (lineCount % lineStarts.length);
+        lineStarts[index] = written;
+        lineLengths[index] = length;
+        lineCount++;
+
+        final int position = (int) (written % data.length);
+        final int firstPart = Math.min(length, data.length - position);
+        System.arraycopy(bytes, offset, data, position, firstPart);
+        System.arraycopy(bytes, offset + firstPart, data, 0, length - firstPart);
+        written += length;
+    }
+
+    /**
+     * Removes all lines.
+     */
+    public synchronized void clear() {
+        written = 0;
+        firstLine = 0;
+        lineCount = 0;
+    }
+
+    /**
+     * @return the number of lines in the buffer.
+     */
+    public synchronized int size() {
+        return (int) (lineCount - firstLine);
+    }
+
+    /**
+     * @param maxLines maximum number of lines to return, or a negative value for all lines in the buffer.
+     * @return the latest lines, separated by line feeds.
+     */
+    @NonNull
+    public synchronized String tail(int maxLines) {
+        final long first = maxLines < 0 ? firstLine : Math.max(firstLine, lineCount - maxLines);
+        if (first == lineCount) {
+            return "";
+        }
+
+        int size = 0;
+        for (long line = first; line < lineCount; line++) {
+            size += lineLengths[(int) (line % lineStarts.length)] + 1;
+        }
+        final byte[] result = new byte[size - 1];
+        int resultPosition = 0;
+        for (long line = first; line < lineCount; line++) {
+            final int index = (int) (line % lineStarts.length);
+            copy(data, lineStarts[index], lineLengths[index], result, resultPosition);
+            resultPosition += lineLengths[index];
+            if (resultPosition < result.length) {
+                result[resultPosition++] = '\n';
+            }
+        }
+        try {
+            return new String(result, ACRAConstants.UTF8);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            return new String(result);
+        }
+    }
+
+    private long oldestStart() {
+        return firstLine < lineCount ? lineStarts[(int) (firstLine % lineStarts.length)] : written;
+    }
+
+    private void growLines() {
+        final int capacity = maxLines < 0 ? lineStarts.length * 2 : Math.min(maxLines, lineStarts.length * 2);
+        final long[] starts = new long[capacity];
+        final int[] lengths = new int[capacity];
+        for (long line = firstLine; line < lineCount; line++) {
+            starts[(int) (line % capacity)] = lineStarts[(int) (line % lineStarts.length)];
+            lengths[(int) (line % capacity)] = lineLengths[(int) (line % lineStarts.length)];
+        }
+        lineStarts = starts;
+        lineLengths = lengths;
+    }
+
+    private void growData(long needed) {
+        int capacity = data.length * 2;
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        final byte[] grown = new byte[capacity];
+        final long start = oldestStart();
+        // copy the retained bytes to their positions in the larger ring
+        long position = start;
+        while (position < written) {
+            final int target = (int) (position % capacity);
+            final int length = (int) Math.min(written - position, capacity - target);
+            copy(data, position, length, grown, target);
+            position += length;
+        }
+        data = grown;
+    }
+
+    /**
+     * Copies bytes starting at an absolute position in a ring to a linear array.
+     */
+    private static void copy(@NonNull byte[] ring, long start, int length, @NonNull byte[] target, int targetPosition) {
+        final int position = (int) (start % ring.length);
+        final int firstPart = Math.min(length, ring.length - position);
+        System.arraycopy(ring, position, target, targetPosition, firstPart);
+        System.arraycopy(ring, 0, target, targetPosition + firstPart, length - firstPart);
+    }
+}
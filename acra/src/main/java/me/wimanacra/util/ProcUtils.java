@@ -0,0 +1,179 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads information about the current process from the proc filesystem.
+ */
+public final class ProcUtils {
+
+    /**
+     * Maximum number of bytes read from a single proc file.
+     */
+    public static final int MAX_FILE_SIZE = 8 * 1024;
+    private static final String KILOBYTES_SUFFIX = " kB";
+
+    private ProcUtils() {
+    }
+
+    /**
+     * Reads a file of "key: value" lines, like /proc/self/status.
+     *
+     * @param path path of the file.
+     * @return an object with one entry per line.
+     * @throws IOException if the file could not be read.
+     * @see Reader#readKeyValues(String)
+     */
+    @NonNull
+    public static JSONObject readKeyValues(@NonNull String path) throws IOException {
+        return new Reader().readKeyValues(path);
+    }
+
+    /**
+     * @param value a value as found in proc files.
+     * @return the value as number if possible, otherwise as String.
+     */
+    @NonNull
+    public static Object toValue(@NonNull String value) {
+        final String number = value.endsWith(KILOBYTES_SUFFIX) ? value.substring(0, value.length() - KILOBYTES_SUFFIX.length()).trim() : value;
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    /**
+     * Reads proc files into one reusable buffer. Files are truncated to {@link #MAX_FILE_SIZE}.
+     * Not thread safe.
+     */
+    public static final class Reader {
+        private final byte[] buffer = new byte[MAX_FILE_SIZE];
+
+        /**
+         * @param path path of the file.
+         * @return the (possibly truncated) content of the file.
+         * @throws IOException if the file could not be read.
+         */
+        @NonNull
+        public String read(@NonNull String path) throws IOException {
+            return new String(buffer, 0, readBytes(path), ACRAConstants.UTF8);
+        }
+
+        /**
+         * Reads the numeric values of some keys of a file of "key: value" lines, like /proc/self/status.
+         * The file is parsed in the buffer without decoding it, so this does not allocate.
+         * Sizes in kB are read as number of kB.
+         *
+         * @param path   path of the file.
+         * @param keys   keys to read.
+         * @param values receives the value of each key, or -1 if the key is missing or its value is not a number.
+         * @throws IOException if the file could not be read.
+         */
+        public void readNumbers(@NonNull String path, @NonNull String[] keys, @NonNull long[] values) throws IOException {
+            final int length = readBytes(path);
+            Arrays.fill(values, -1);
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineStart;
+                while (lineEnd < length && buffer[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    if (isKey(lineStart, lineEnd, keys[i])) {
+                        values[i] = parseNumber(lineStart + keys[i].length() + 1, lineEnd);
+                        break;
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private int readBytes(@NonNull String path) throws IOException {
+            final FileInputStream input = new FileInputStream(path);
+            try {
+                int length = 0;
+                int read;
+                while (length < buffer.length && (read = input.read(buffer, length, buffer.length - length)) != -1) {
+                    length += read;
+                }
+                return length;
+            } finally {
+                IOUtils.safeClose(input);
+            }
+        }
+
+        private boolean isKey(int start, int end, @NonNull String key) {
+            if (end - start <= key.length() || buffer[start + key.length()] != ':') {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (buffer[start + i] != key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long parseNumber(int start, int end) {
+            while (start < end && (buffer[start] == ' ' || buffer[start] == '\t')) {
+                start++;
+            }
+            long result = -1;
+            while (start < end && buffer[start] >= '0' && buffer[start] <= '9') {
+                result = (result < 0 ? 0 : result * 10) + buffer[start] - '0';
+                start++;
+            }
+            return result;
+        }
+
+        /**
+         * Reads a file of "key: value" lines, like /proc/self/status.
+         * Values are stored as numbers where possible. Sizes in kB are stored as number of kB.
+         *
+         * @param path path of the file.
+         * @return an object with one entry per line.
+         * @throws IOException if the file could not be read.
+         */
+        @NonNull
+        public JSONObject readKeyValues(@NonNull String path) throws IOException {
+            final JSONObject result = new JSONObject();
+            for (String line : read(path).split("\n")) {
+                final int separator = line.indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+                try {
+                    result.put(line.substring(0, separator).trim(), toValue(line.substring(separator + 1).trim()));
+                } catch (JSONException ignored) {
+                    // keys are never null
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small shared pool of daemon threads which read streams (usually the output of child processes) in the background,
+ * so the calling thread can stop waiting at a deadline.
+ * <p>
+ * The pool and its queue are bounded. Streams which cannot be queued are rejected instead of spawning more threads.
+ * </p>
+ */
+final class StreamPump {
+
+    private static final long KEEP_ALIVE = 10000;
+    private static ExecutorService executor;
+
+    private StreamPump() {
+    }
+
+    /**
+     * @param task reads a stream until its end.
+     * @return the Future of the task.
+     * @throws RejectedExecutionException if all readers are busy and the queue is full.
+     */
+    @NonNull
+    static <T> Future<T> submit(@NonNull Callable<T> task) {
+        return getExecutor().submit(task);
+    }
+
+    @NonNull
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(ACRAConstants.STREAM_PUMP_POOL_SIZE, ACRAConstants.STREAM_PUMP_POOL_SIZE,
+                    KEEP_ALIVE, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(ACRAConstants.STREAM_PUMP_QUEUE_SIZE),
+                    new DaemonThreadFactory("ACRA-stream-pump"));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+                pool.allowCoreThreadTimeOut(true);
+            }
+            executor = pool;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRAConstants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads UTF-8 encoded JSON from a stream token by token through one fixed size buffer.
+ * <p>
+ * Values which are not needed can be skipped without being decoded,
+ * and the byte offset of every value is available through {@link #getPosition()}.
+ * This is the counterpart of {@link StreamingJsonWriter}.
+ * </p>
+ */
+public final class StreamingJsonReader implements Closeable {
+
+    /**
+     * Kind of the next value in the stream.
+     */
+    public enum Token {
+        BEGIN_OBJECT,
+        BEGIN_ARRAY,
+        STRING,
+        /**
+         * A number, true, false or null.
+         */
+        LITERAL,
+        /**
+         * The end of the current object or array.
+         */
+        END
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
+    private int position;
+    private int limit;
+    // number of bytes before the start of the buffer
+    private long offset;
+    private boolean needsSeparator;
+
+    public StreamingJsonReader(@NonNull InputStream in) {
+        this.in = in;
+    }
+
+    public void beginObject() throws IOException, JSONException {
+        separate();
+        expect('{');
+        needsSeparator = false;
+    }
+
+    public void endObject() throws IOException, JSONException {
+        expect('}');
+        needsSeparator = true;
+    }
+
+    public void beginArray() throws IOException, JSONException {
+        separate();
+        expect('[');
+        needsSeparator = false;
+    }
+
+    public void endArray() throws IOException, JSONException {
+        expect(']');
+        needsSeparator = true;
+    }
+
+    /**
+     * @return if the current object or array has more elements.
+     */
+    public boolean hasNext() throws IOException, JSONException {
+        final int c = peekNonWhitespace();
+        if (c == '}' || c == ']') {
+            return false;
+        }
+        separate();
+        return true;
+    }
+
+    /**
+     * @return the kind of the next value, without consuming it.
+     */
+    @NonNull
+    public Token peek() throws IOException, JSONException {
+        final int c = peekNonWhitespace();
+        if (c == '}' || c == ']') {
+            return Token.END;
+        }
+        separate();
+        switch (peekNonWhitespace()) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            default:
+                return Token.LITERAL;
+        }
+    }
+
+    /**
+     * @return the name of the next member of the current object.
+     */
+    @NonNull
+    public String nextName() throws IOException, JSONException {
+        separate();
+        expect('"');
+        //noinspection ConstantConditions
+        final String name = readString(Long.MAX_VALUE);
+        expect(':');
+        needsSeparator = false;
+        return name;
+    }
+
+    /**
+     * @return the next value, which must be a string.
+     */
+    @NonNull
+    public String nextString() throws IOException, JSONException {
+        //noinspection ConstantConditions
+        return nextString(Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the next value, which must be a string, if it is not longer than the given size.
+     *
+     * @param maxSize maximum encoded size of the string in bytes.
+     * @return the string, or null if it was longer than maxSize. The string is consumed in both cases.
+     */
+    @Nullable
+    public String nextString(long maxSize) throws IOException, JSONException {
+        separate();
+        expect('"');
+        final String value = readString(maxSize);
+        needsSeparator = true;
+        return value;
+    }
+
+    /**
+     * Reads the members of the next value, which must be an object, into the given object.
+     *
+     * @param target object which receives the members.
+     */
+    public void nextObject(@NonNull JSONObject target) throws IOException, JSONException {
+        beginObject();
+        while (hasNext()) {
+            final String name = nextName();
+            target.put(name, nextValue());
+        }
+        endObject();
+    }
+
+    /**
+     * @return the next value as a String, Number, Boolean, {@link JSONObject}, {@link JSONArray} or {@link JSONObject#NULL}.
+     */
+    @NonNull
+    public Object nextValue() throws IOException, JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+                final JSONObject object = new JSONObject();
+                nextObject(object);
+                return object;
+            case BEGIN_ARRAY:
+                final JSONArray array = new JSONArray();
+                beginArray();
+                while (hasNext()) {
+                    array.put(nextValue());
+                }
+                endArray();
+                return array;
+            case STRING:
+                return nextString();
+            case LITERAL:
+                final Object literal = toLiteral(readLiteral());
+                needsSeparator = true;
+                return literal;
+            default:
+                throw syntaxError("Expected a value");
+        }
+    }
+
+    /**
+     * Skips the next value without decoding it.
+     */
+    public void skipValue() throws IOException, JSONException {
+        switch (peek()) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                int depth = 0;
+                do {
+                    final int c = nextByte();
+                    if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    } else if (c == '"') {
+                        skipString();
+                    }
+                } while (depth > 0);
+                break;
+            case STRING:
+                expect('"');
+                skipString();
+                break;
+            case LITERAL:
+                readLiteral();
+                break;
+            default:
+                throw syntaxError("Expected a value");
+        }
+        needsSeparator = true;
+    }
+
+    /**
+     * @return the number of bytes consumed so far. After {@link #peek()}, this is the offset of the next value.
+     */
+    public long getPosition() {
+        return offset + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void separate() throws IOException, JSONException {
+        if (needsSeparator) {
+            expect(',');
+            needsSeparator = false;
+        }
+    }
+
+    private void expect(char expected) throws IOException, JSONException {
+        if (peekNonWhitespace() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        position++;
+    }
+
+    /**
+     * Reads the rest of a string after the opening quote.
+     */
+    @Nullable
+    private String readString(long maxSize) throws IOException, JSONException {
+        final long start = getPosition();
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            final int c = nextByte();
+            if (c == '"') {
+                return builder != null ? builder.toString() : null;
+            } else if (c == '\\') {
+                final char escaped = readEscape();
+                if (builder != null) {
+                    builder.append(escaped);
+                }
+            } else if (c < 0x80) {
+                if (builder != null) {
+                    builder.append((char) c);
+                }
+            } else {
+                final int codePoint = readCodePoint(c);
+                if (builder != null) {
+                    builder.appendCodePoint(codePoint);
+                }
+            }
+            if (builder != null && getPosition() - start > maxSize) {
+                // the closing quote is not part of the size
+                builder = null;
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a string after the opening quote.
+     */
+    private void skipString() throws IOException, JSONException {
+        while (true) {
+            final int c = nextByte();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                nextByte();
+            }
+        }
+    }
+
+    private char readEscape() throws IOException, JSONException {
+        final int c = nextByte();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit(nextByte(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Invalid escape sequence");
+        }
+    }
+
+    /**
+     * Decodes a multi byte UTF-8 sequence. Malformed sequences are replaced by U+FFFD.
+     *
+     * @param lead first byte of the sequence.
+     */
+    private int readCodePoint(int lead) throws IOException {
+        final int length;
+        int codePoint;
+        if ((lead & 0xe0) == 0xc0) {
+            length = 1;
+            codePoint = lead & 0x1f;
+        } else if ((lead & 0xf0) == 0xe0) {
+            length = 2;
+            codePoint = lead & 0x0f;
+        } else if ((lead & 0xf8) == 0xf0) {
+            length = 3;
+            codePoint = lead & 0x07;
+        } else {
+            return 0xfffd;
+        }
+        for (int i = 0; i < length; i++) {
+            final int c = peekByte();
+            if ((c & 0xc0) != 0x80) {
+                // leave the unexpected byte for the caller
+                return 0xfffd;
+            }
+            position++;
+            codePoint = (codePoint << 6) | (c & 0x3f);
+        }
+        return codePoint <= Character.MAX_CODE_POINT ? codePoint : 0xfffd;
+    }
+
+    @NonNull
+    private String readLiteral() throws IOException, JSONException {
+        final StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = peekByte()) != -1 && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+            builder.append((char) c);
+            position++;
+        }
+        if (builder.length() == 0) {
+            throw syntaxError("Unexpected character");
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private Object toLiteral(@NonNull String literal) throws JSONException {
+        if ("true".equals(literal)) {
+            return Boolean.TRUE;
+        } else if ("false".equals(literal)) {
+            return Boolean.FALSE;
+        } else if ("null".equals(literal)) {
+            return JSONObject.NULL;
+        }
+        try {
+            if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+                final long value = Long.parseLong(literal);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            }
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Invalid literal " + literal);
+        }
+    }
+
+    private int peekNonWhitespace() throws IOException, JSONException {
+        int c;
+        while ((c = peekByte()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            position++;
+        }
+        if (c == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return c;
+    }
+
+    private int nextByte() throws IOException, JSONException {
+        final int c = peekByte();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+        position++;
+        return c;
+    }
+
+    /**
+     * @return the next byte without consuming it, or -1 at the end of the stream.
+     */
+    private int peekByte() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            position = 0;
+            limit = 0;
+            final int read = in.read(buffer);
+            if (read <= 0) {
+                return -1;
+            }
+            limit = read;
+        }
+        return buffer[position] & 0xff;
+    }
+
+    @NonNull
+    private JSONException syntaxError(@NonNull String message) {
+        return new JSONException(message + " at byte " + getPosition());
+    }
+}
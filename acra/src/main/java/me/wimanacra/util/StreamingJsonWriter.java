@@ -0,0 +1,257 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import me.wimanacra.ACRAConstants;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes JSON as UTF-8 directly to a stream through one fixed size buffer.
+ * <p>
+ * Unlike {@link JSONObject#toString()}, no intermediate copy of the document is built:
+ * strings are escaped and encoded character by character as they are written.
+ * The caller is responsible for a well formed sequence of calls.
+ * </p>
+ */
+public final class StreamingJsonWriter implements Closeable {
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    // valid in JSON, but not in JavaScript strings
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[ACRAConstants.DEFAULT_BUFFER_SIZE_IN_BYTES];
+    private int position;
+    private boolean needsSeparator;
+
+    public StreamingJsonWriter(@NonNull OutputStream out) {
+        this.out = out;
+    }
+
+    @NonNull
+    public StreamingJsonWriter beginObject() throws IOException {
+        separate();
+        write('{');
+        needsSeparator = false;
+        return this;
+    }
+
+    @NonNull
+    public StreamingJsonWriter endObject() throws IOException {
+        write('}');
+        needsSeparator = true;
+        return this;
+    }
+
+    @NonNull
+    public StreamingJsonWriter beginArray() throws IOException {
+        separate();
+        write('[');
+        needsSeparator = false;
+        return this;
+    }
+
+    @NonNull
+    public StreamingJsonWriter endArray() throws IOException {
+        write(']');
+        needsSeparator = true;
+        return this;
+    }
+
+    /**
+     * Writes the name of the next value in an object.
+     */
+    @NonNull
+    public StreamingJsonWriter name(@NonNull String name) throws IOException {
+        separate();
+        string(name);
+        write(':');
+        needsSeparator = false;
+        return this;
+    }
+
+    /**
+     * Writes a value, which may be null, a String, a Number, a Boolean, a {@link JSONObject} or a {@link JSONArray}.
+     * Other objects are written as their String representation.
+     */
+    @NonNull
+    public StreamingJsonWriter value(@Nullable Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            separate();
+            write(NULL);
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            beginObject();
+            for (final Iterator<String> iterator = object.keys(); iterator.hasNext(); ) {
+                final String key = iterator.next();
+                name(key).value(object.opt(key));
+            }
+            endObject();
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            endArray();
+        } else if (value instanceof Number) {
+            separate();
+            try {
+                writeAscii(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                // NaN and infinity are not valid JSON numbers
+                write(NULL);
+            }
+        } else if (value instanceof Boolean) {
+            separate();
+            write((Boolean) value ? TRUE : FALSE);
+        } else {
+            separate();
+            string(value.toString());
+        }
+        needsSeparator = true;
+        return this;
+    }
+
+    /**
+     * Writes all buffered bytes to the stream.
+     */
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void separate() throws IOException {
+        if (needsSeparator) {
+            write(',');
+        }
+    }
+
+    private void string(@NonNull String value) throws IOException {
+        write('"');
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                case '\\':
+                    write('\\');
+                    write(c);
+                    break;
+                case '\n':
+                    write('\\');
+                    write('n');
+                    break;
+                case '\r':
+                    write('\\');
+                    write('r');
+                    break;
+                case '\t':
+                    write('\\');
+                    write('t');
+                    break;
+                case '\b':
+                    write('\\');
+                    write('b');
+                    break;
+                case '\f':
+                    write('\\');
+                    write('f');
+                    break;
+                default:
+                    if (c < 0x20 || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                        escape(c);
+                    } else if (c < 0x80) {
+                        write(c);
+                    } else if (c < 0x800) {
+                        write(0xc0 | (c >> 6));
+                        write(0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        write(0xf0 | (codePoint >> 18));
+                        write(0x80 | ((codePoint >> 12) & 0x3f));
+                        write(0x80 | ((codePoint >> 6) & 0x3f));
+                        write(0x80 | (codePoint & 0x3f));
+                    } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                        // unpaired surrogates cannot be encoded in UTF-8
+                        escape(c);
+                    } else {
+                        write(0xe0 | (c >> 12));
+                        write(0x80 | ((c >> 6) & 0x3f));
+                        write(0x80 | (c & 0x3f));
+                    }
+            }
+        }
+        write('"');
+    }
+
+    private void escape(char c) throws IOException {
+        write('\\');
+        write('u');
+        write(HEX[(c >> 12) & 0xf]);
+        write(HEX[(c >> 8) & 0xf]);
+        write(HEX[(c >> 4) & 0xf]);
+        write(HEX[c & 0xf]);
+    }
+
+    private void writeAscii(@NonNull String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    private void write(@NonNull byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            write(b);
+        }
+    }
+
+    private void write(int b) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = (byte) b;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.builder;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ReportField;
+import me.wimanacra.collector.CrashReportData;
+import me.wimanacra.config.ACRAConfigurationException;
+import me.wimanacra.config.ConfigurationBuilder;
+import me.wimanacra.file.ReportLocator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportDeduplicatorTest {
+
+    private static final int HOUR = 60 * 60 * 1000;
+
+    @Test
+    public void isDisabledWithoutBurst() throws Exception {
+        assertFalse(create(0, HOUR).isEnabled());
+        assertTrue(create(1, HOUR).isEnabled());
+    }
+
+    @Test
+    public void suppressesOccurrencesBeyondBurst() throws Exception {
+        final ReportDeduplicator deduplicator = create(2, HOUR);
+        assertEquals(0, deduplicator.acquire("hash", report("1")));
+        assertEquals(0, deduplicator.acquire("hash", report("2")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("3")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("4")));
+    }
+
+    @Test
+    public void limitsEachHashSeparately() throws Exception {
+        final ReportDeduplicator deduplicator = create(1, HOUR);
+        assertEquals(0, deduplicator.acquire("first", report("1")));
+        assertEquals(0, deduplicator.acquire("second", report("2")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("first", report("3")));
+    }
+
+    @Test
+    public void stateIsSharedBetweenInstances() throws Exception {
+        assertEquals(0, create(1, HOUR).acquire("hash", report("1")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, create(1, HOUR).acquire("hash", report("2")));
+    }
+
+    @Test
+    public void refillsTokensOverTheWindow() throws Exception {
+        final ReportDeduplicator deduplicator = create(1, 200);
+        assertEquals(0, deduplicator.acquire("hash", report("1")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("2")));
+        Thread.sleep(250);
+        // the first report was never stored, so the next one carries the suppressed occurrence
+        assertEquals(1, deduplicator.acquire("hash", report("3")));
+    }
+
+    @Test
+    public void attachesSuppressedOccurrencesToPendingReport() throws Exception {
+        final ReportDeduplicator deduplicator = create(1, HOUR);
+        final File pending = store(report("1"));
+        assertEquals(0, deduplicator.acquire("hash", pending));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("2")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("3")));
+
+        final CrashReportData data = new CrashReportData();
+        data.putNumber(ReportField.DUPLICATE_COUNT, 1);
+        assertEquals(2, deduplicator.attachCount(pending, data));
+        assertEquals("3", data.get(ReportField.DUPLICATE_COUNT).toString());
+
+        deduplicator.onReportSent(pending, 2);
+        final CrashReportData resent = new CrashReportData();
+        assertEquals(0, deduplicator.attachCount(pending, resent));
+        assertNull(resent.get(ReportField.DUPLICATE_COUNT));
+    }
+
+    @Test
+    public void pendingReportCarriesCountOfLaterReports() throws Exception {
+        final ReportDeduplicator deduplicator = create(2, HOUR);
+        final File pending = store(report("1"));
+        assertEquals(0, deduplicator.acquire("hash", pending));
+        assertEquals(0, deduplicator.acquire("hash", report("2")));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("3")));
+        assertEquals(1, deduplicator.attachCount(pending, new CrashReportData()));
+    }
+
+    @Test
+    public void keepsOccurrencesSuppressedWhileReportWasSent() throws Exception {
+        final ReportDeduplicator deduplicator = create(1, 200);
+        final File pending = store(report("1"));
+        assertEquals(0, deduplicator.acquire("hash", pending));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("2")));
+        assertEquals(1, deduplicator.attachCount(pending, new CrashReportData()));
+        assertEquals(ReportDeduplicator.SUPPRESSED, deduplicator.acquire("hash", report("3")));
+
+        deduplicator.onReportSent(pending, 1);
+        if (!pending.delete()) {
+            throw new IOException("Could not delete " + pending);
+        }
+        Thread.sleep(250);
+        // the occurrence suppressed after the count was attached is carried by the next report
+        assertEquals(1, deduplicator.acquire("hash", report("4")));
+    }
+
+    @NonNull
+    private static ReportDeduplicator create(int burst, int window) throws ACRAConfigurationException {
+        return new ReportDeduplicator(RuntimeEnvironment.application, new ConfigurationBuilder(RuntimeEnvironment.application)
+                .setDuplicateReportBurst(burst)
+                .setDuplicateReportWindow(window)
+                .build());
+    }
+
+    @NonNull
+    private static File report(@NonNull String name) {
+        return new File(new ReportLocator(RuntimeEnvironment.application).getUnapprovedFolder(), name + ".stacktrace");
+    }
+
+    @NonNull
+    private static File store(@NonNull File report) throws IOException {
+        if (!report.createNewFile()) {
+            throw new IOException("Could not create " + report);
+        }
+        return report;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.collector;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ReportField;
+import me.wimanacra.builder.ReportBuilder;
+import me.wimanacra.config.ConfigurationBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class LogFileCollectorTest {
+
+    private static final String FILE_NAME = "app.log";
+
+    @Test
+    public void readsLastLines() throws Exception {
+        write(FILE_NAME, "1\n2\n3\n4\n");
+        assertEquals("3\n4", collect(2));
+    }
+
+    @Test
+    public void readsLastLineWithoutTerminator() throws Exception {
+        write(FILE_NAME, "1\n2\n3");
+        assertEquals("2\n3", collect(2));
+    }
+
+    @Test
+    public void keepsEmptyLines() throws Exception {
+        write(FILE_NAME, "1\n\n\n");
+        assertEquals("\n", collect(2));
+    }
+
+    @Test
+    public void dropsCarriageReturnsOfLineTerminators() throws Exception {
+        write(FILE_NAME, "1\r\n2\r\n3\r\n");
+        assertEquals("2\n3", collect(2));
+    }
+
+    @Test
+    public void readsLinesAcrossBufferBoundaries() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("line ").append(i).append('\n');
+            if (i >= 9000) {
+                if (i > 9000) {
+                    expected.append('\n');
+                }
+                expected.append("line ").append(i);
+            }
+        }
+        write(FILE_NAME, content.toString());
+        assertEquals(expected.toString(), collect(1000));
+    }
+
+    @Test
+    public void continuesInRotatedFiles() throws Exception {
+        write(FILE_NAME, "5\n6\n");
+        write(FILE_NAME + ".1", "3\n4\n");
+        write(FILE_NAME + ".2", "1\n2\n");
+        assertEquals("2\n3\n4\n5\n6", collect(5));
+        assertEquals("5\n6", collect(2));
+    }
+
+    @Test
+    public void stopsAtMissingRotatedFile() throws Exception {
+        write(FILE_NAME, "3\n");
+        write(FILE_NAME + ".2", "1\n2\n");
+        assertEquals("3", collect(5));
+    }
+
+    @Test
+    public void readsWholeFileWithoutLimit() throws Exception {
+        write(FILE_NAME, "2\r\n3\n");
+        write(FILE_NAME + ".1", "1\n");
+        assertEquals("2\n3", collect(-1));
+    }
+
+    @Test
+    public void readsNothingFromEmptyOrMissingFile() throws Exception {
+        assertEquals("", collect(2));
+        write(FILE_NAME, "");
+        assertEquals("", collect(2));
+    }
+
+    @Test
+    public void decodesUtf8() throws Exception {
+        write(FILE_NAME, "été\n€\n");
+        assertEquals("été\n€", collect(2));
+    }
+
+    @NonNull
+    private static String collect(int lines) throws Exception {
+        final LogFileCollector collector = new LogFileCollector(RuntimeEnvironment.application, new ConfigurationBuilder(RuntimeEnvironment.application)
+                .setApplicationLogFile(FILE_NAME)
+                .setApplicationLogFileLines(lines)
+                .build());
+        return collector.collect(ReportField.APPLICATION_LOG, new ReportBuilder()).toString();
+    }
+
+    private static void write(@NonNull String name, @NonNull String content) throws IOException {
+        final OutputStream out = new FileOutputStream(new File(RuntimeEnvironment.application.getFilesDir(), name));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
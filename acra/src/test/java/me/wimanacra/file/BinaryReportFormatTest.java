@@ -0,0 +1,201 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.collector.CrashReportData;
+import me.wimanacra.model.ComplexElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class BinaryReportFormatTest {
+
+    // 2017-03-01T10:20:30.456+01:00
+    private static final long CRASH_TIME = 1488360030456L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsWhatWasWritten() throws Exception {
+        final CrashReportData data = createReport();
+        final File file = write(data);
+        assertTrue(BinaryReportFormat.isBinary(open(file)));
+
+        final CrashReportData read = read(file, null, false);
+        assertEquals(data.size(), read.size());
+        assertEquals("2017-03-01T10:20:30.456+01:00", read.getProperty(ReportField.USER_CRASH_DATE));
+        assertEquals("java.lang.RuntimeException: é€😀\n\tat Foo.bar(Foo.java:1)", read.getProperty(ReportField.STACK_TRACE));
+        assertEquals(42L, read.get(ReportField.DUPLICATE_COUNT).value());
+        assertEquals(1.5, read.get(ReportField.TOTAL_MEM_SIZE).value());
+        assertEquals(true, read.get(ReportField.IS_SILENT).value());
+        final ComplexElement build = (ComplexElement) read.get(ReportField.BUILD);
+        assertEquals("value", build.getString("key"));
+        assertEquals(7, build.getJSONObject("nested").getInt("number"));
+    }
+
+    @Test
+    public void readsOnlyRequestedFields() throws Exception {
+        final File file = write(createReport());
+        final CrashReportData read = read(file, EnumSet.of(ReportField.STACK_TRACE_HASH, ReportField.BUILD), false);
+        assertEquals(2, read.size());
+        assertEquals("abc123", read.getProperty(ReportField.STACK_TRACE_HASH));
+        assertEquals("value", ((ComplexElement) read.get(ReportField.BUILD)).getString("key"));
+    }
+
+    @Test
+    public void readsLargeStringsLazily() throws Exception {
+        final StringBuilder logcat = new StringBuilder();
+        while (logcat.length() <= ACRAConstants.LAZY_VALUE_THRESHOLD) {
+            logcat.append("line €\n");
+        }
+        final CrashReportData data = createReport();
+        data.putString(ReportField.LOGCAT, logcat.toString());
+        final File file = write(data);
+
+        final CrashReportData read = read(file, null, true);
+        assertTrue(read.get(ReportField.LOGCAT) instanceof LazyStringElement);
+        assertEquals(logcat.toString(), read.getProperty(ReportField.LOGCAT));
+        assertEquals("abc123", read.getProperty(ReportField.STACK_TRACE_HASH));
+    }
+
+    @Test
+    public void readsHeaderWithoutFields() throws Exception {
+        final File file = write(createReport());
+        final BinaryReportFormat.Header header = BinaryReportFormat.readHeader(new DataInputStream(open(file)));
+        assertTrue(header.silent);
+        assertEquals(CRASH_TIME, header.timestamp);
+        assertEquals("abc123", header.stackTraceHash);
+
+        final BinaryReportFormat.Header loaded = CrashReportPersister.loadHeader(file);
+        assertTrue(loaded.silent);
+        assertEquals(CRASH_TIME, loaded.timestamp);
+        assertEquals("abc123", loaded.stackTraceHash);
+    }
+
+    @Test
+    public void readsHeaderOfJsonReport() throws Exception {
+        final File file = folder.newFile();
+        final CrashReportData data = createReport();
+        data.putString(ReportField.USER_CRASH_DATE, "2017-03-01T09:20:30.456Z");
+        new CrashReportPersister().store(data, file);
+        assertFalse(BinaryReportFormat.isBinary(open(file)));
+
+        final BinaryReportFormat.Header header = CrashReportPersister.loadHeader(file);
+        assertTrue(header.silent);
+        assertEquals(CRASH_TIME, header.timestamp);
+        assertEquals("abc123", header.stackTraceHash);
+    }
+
+    @Test
+    public void writesEmptyHashWithoutStackTraceHash() throws Exception {
+        final CrashReportData data = new CrashReportData();
+        data.putString(ReportField.STACK_TRACE, "trace");
+        final BinaryReportFormat.Header header = BinaryReportFormat.readHeader(new DataInputStream(open(write(data))));
+        assertFalse(header.silent);
+        assertEquals("", header.stackTraceHash);
+    }
+
+    @Test(expected = UnsupportedReportVersionException.class)
+    public void rejectsNewerSchemaVersion() throws Exception {
+        final File file = write(createReport());
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // the version follows the magic
+            randomAccessFile.seek(4);
+            final int version = randomAccessFile.read();
+            randomAccessFile.seek(4);
+            randomAccessFile.write(version + 1);
+        } finally {
+            randomAccessFile.close();
+        }
+        read(file, null, false);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedReport() throws Exception {
+        final File file = write(createReport());
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        } finally {
+            randomAccessFile.close();
+        }
+        read(file, null, false);
+    }
+
+    @NonNull
+    private static CrashReportData createReport() throws Exception {
+        final CrashReportData data = new CrashReportData();
+        data.putString(ReportField.USER_CRASH_DATE, "2017-03-01T10:20:30.456+01:00");
+        data.putString(ReportField.STACK_TRACE_HASH, "abc123");
+        data.putString(ReportField.STACK_TRACE, "java.lang.RuntimeException: é€😀\n\tat Foo.bar(Foo.java:1)");
+        data.putNumber(ReportField.DUPLICATE_COUNT, 42);
+        data.putNumber(ReportField.TOTAL_MEM_SIZE, 1.5);
+        data.putBoolean(ReportField.IS_SILENT, true);
+        data.put(ReportField.BUILD, new ComplexElement("{\"key\":\"value\",\"nested\":{\"number\":7}}"));
+        return data;
+    }
+
+    @NonNull
+    private File write(@NonNull CrashReportData data) throws IOException {
+        final File file = folder.newFile();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            BinaryReportFormat.write(data, out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @NonNull
+    private static CrashReportData read(@NonNull File file, Set<ReportField> fields, boolean lazy) throws Exception {
+        final BufferedInputStream in = open(file);
+        try {
+            return BinaryReportFormat.read(in, file, fields, lazy);
+        } finally {
+            in.close();
+        }
+    }
+
+    @NonNull
+    private static BufferedInputStream open(@NonNull File file) throws IOException {
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.file;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import me.wimanacra.ACRAConstants;
+import me.wimanacra.ReportField;
+import me.wimanacra.collector.CrashReportData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ReportIndexTest {
+
+    private Context context;
+    private File unapprovedFolder;
+    private File approvedFolder;
+    private File indexFolder;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        final ReportLocator reportLocator = new ReportLocator(context);
+        unapprovedFolder = reportLocator.getUnapprovedFolder();
+        approvedFolder = reportLocator.getApprovedFolder();
+        indexFolder = context.getDir("ACRA-index", Context.MODE_PRIVATE);
+        for (File folder : Arrays.asList(unapprovedFolder, approvedFolder, indexFolder)) {
+            for (File file : ReportLocator.listFiles(folder, "")) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    @Test
+    public void listsAddedReportsOldestFirst() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        index.add(create(unapprovedFolder, "b", 2000), "hash-b");
+        index.add(create(unapprovedFolder, "a" + ACRAConstants.SILENT_SUFFIX, 1000), null);
+        index.add(create(approvedFolder, "c", 3000), "hash-c");
+
+        final List<ReportIndex.Entry> unapproved = index.getReports(false);
+        assertNames(unapproved, "a" + ACRAConstants.SILENT_SUFFIX, "b");
+        assertTrue(unapproved.get(0).isSilent());
+        assertFalse(unapproved.get(0).isApproved());
+        assertEquals(1000, unapproved.get(0).getTimestamp());
+        assertNull(unapproved.get(0).getStackTraceHash());
+        assertFalse(unapproved.get(1).isSilent());
+        assertEquals("hash-b", unapproved.get(1).getStackTraceHash());
+        assertEquals(unapproved.get(1).getFile().length(), unapproved.get(1).getSize());
+
+        final List<ReportIndex.Entry> approved = index.getReports(true);
+        assertNames(approved, "c");
+        assertTrue(approved.get(0).isApproved());
+    }
+
+    @Test
+    public void rewrittenReportKeepsItsPosition() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        final File first = create(unapprovedFolder, "first", 1000);
+        index.add(first, "hash");
+        index.add(create(unapprovedFolder, "second", 2000), null);
+        assertTrue(first.setLastModified(3000));
+        index.add(first, null);
+
+        final List<ReportIndex.Entry> reports = index.getReports(false);
+        assertNames(reports, "first", "second");
+        assertEquals(1000, reports.get(0).getTimestamp());
+        assertEquals("hash", reports.get(0).getStackTraceHash());
+    }
+
+    @Test
+    public void movesReportsKeepingTheirData() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        final File unapproved = create(unapprovedFolder, "report", 1000);
+        index.add(unapproved, "hash");
+        final File approved = new File(approvedFolder, unapproved.getName());
+        assertTrue(unapproved.renameTo(approved));
+        index.move(unapproved, approved);
+
+        assertTrue(index.getReports(false).isEmpty());
+        final List<ReportIndex.Entry> reports = index.getReports(true);
+        assertNames(reports, "report");
+        assertEquals(1000, reports.get(0).getTimestamp());
+        assertEquals("hash", reports.get(0).getStackTraceHash());
+    }
+
+    @Test
+    public void deletesReports() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        final File report = create(unapprovedFolder, "report", 1000);
+        index.add(report, null);
+        index.delete(report);
+        assertFalse(report.exists());
+        assertTrue(index.getReports(false).isEmpty());
+    }
+
+    @Test
+    public void replaysChangesOfOtherInstances() throws Exception {
+        final ReportIndex first = new ReportIndex(context);
+        final ReportIndex second = new ReportIndex(context);
+        final File a = create(unapprovedFolder, "a", 1000);
+        first.add(a, null);
+        assertNames(second.getReports(false), "a");
+
+        second.add(create(unapprovedFolder, "b", 2000), null);
+        second.delete(a);
+        assertNames(first.getReports(false), "b");
+    }
+
+    @Test
+    public void compactsTheLog() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        final ReportIndex other = new ReportIndex(context);
+        index.add(create(unapprovedFolder, "kept", 1000), null);
+        assertNames(other.getReports(false), "kept");
+        for (int i = 0; i < 200; i++) {
+            final File report = create(unapprovedFolder, "temporary" + i, 2000 + i);
+            index.add(report, null);
+            index.delete(report);
+        }
+        // one line per report, the rest has been dropped by compaction
+        assertTrue(readLog().size() < 100);
+        assertNames(index.getReports(false), "kept");
+        // the other instance notices that the log has been rewritten
+        assertNames(other.getReports(false), "kept");
+        assertNames(new ReportIndex(context).getReports(false), "kept");
+    }
+
+    @Test
+    public void dropsIncompleteAndMalformedLines() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        index.add(create(unapprovedFolder, "a", 1000), null);
+        // left behind by a process killed while appending
+        appendToLog("+\t0\tbroken\t0\tnot a number\t0\t\n+\t0\tincomplete");
+        index.add(create(unapprovedFolder, "b", 2000), null);
+
+        assertNames(index.getReports(false), "a", "b");
+        assertNames(new ReportIndex(context).getReports(false), "a", "b");
+    }
+
+    @Test
+    public void rebuildsMissingIndexFromReportHeaders() throws Exception {
+        final File report = store(unapprovedFolder, "stored", "2017-03-01T10:20:30.456+01:00", "hash");
+        store(approvedFolder, "approved", "2017-03-01T10:20:31.456+01:00", null);
+
+        final ReportIndex index = new ReportIndex(context);
+        assertTrue(index.needsReconcile());
+        final List<ReportIndex.Entry> reports = index.getReports(false);
+        assertNames(reports, "stored");
+        assertEquals(1488360030456L, reports.get(0).getTimestamp());
+        assertEquals("hash", reports.get(0).getStackTraceHash());
+        assertEquals(report.length(), reports.get(0).getSize());
+        assertNames(index.getReports(true), "approved");
+        assertFalse(index.needsReconcile());
+    }
+
+    @Test
+    public void reconcilesWithReportFolders() throws Exception {
+        final ReportIndex index = new ReportIndex(context);
+        final File deleted = create(unapprovedFolder, "deleted", 1000);
+        index.add(deleted, null);
+        index.add(create(unapprovedFolder, "kept", 2000), null);
+        assertTrue(deleted.delete());
+
+        index.markDirty();
+        final File missing = store(unapprovedFolder, "missing", "2017-03-01T10:20:30.456+01:00", "hash");
+        assertTrue(index.needsReconcile());
+        index.reconcile(Arrays.asList(ReportLocator.listFiles(unapprovedFolder, ACRAConstants.REPORTFILE_EXTENSION)), Collections.<File>emptyList());
+
+        assertFalse(index.needsReconcile());
+        final List<ReportIndex.Entry> reports = index.getReports(false);
+        assertNames(reports, "kept", "missing");
+        assertEquals(missing, reports.get(1).getFile());
+        assertEquals("hash", reports.get(1).getStackTraceHash());
+        assertNames(new ReportIndex(context).getReports(false), "kept", "missing");
+    }
+
+    @NonNull
+    private static File create(@NonNull File folder, @NonNull String name, long lastModified) throws IOException {
+        final File report = new File(folder, name + ACRAConstants.REPORTFILE_EXTENSION);
+        final OutputStream out = new FileOutputStream(report);
+        try {
+            out.write(name.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertTrue(report.setLastModified(lastModified));
+        return report;
+    }
+
+    @NonNull
+    private static File store(@NonNull File folder, @NonNull String name, @NonNull String crashDate, String hash) throws IOException {
+        final CrashReportData data = new CrashReportData();
+        data.putString(ReportField.USER_CRASH_DATE, crashDate);
+        if (hash != null) {
+            data.putString(ReportField.STACK_TRACE_HASH, hash);
+        }
+        final File report = new File(folder, name + ACRAConstants.REPORTFILE_EXTENSION);
+        new CrashReportPersister().store(data, report);
+        return report;
+    }
+
+    @NonNull
+    private List<String> readLog() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(new File(indexFolder, "reports")));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private void appendToLog(@NonNull String text) throws IOException {
+        final OutputStream out = new FileOutputStream(new File(indexFolder, "reports"), true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertNames(@NonNull List<ReportIndex.Entry> reports, @NonNull String... names) {
+        final List<String> actual = new ArrayList<String>();
+        for (ReportIndex.Entry report : reports) {
+            actual.add(report.getFile().getName());
+        }
+        final List<String> expected = new ArrayList<String>();
+        for (String name : names) {
+            expected.add(name + ACRAConstants.REPORTFILE_EXTENSION);
+        }
+        assertEquals(expected, actual);
+    }
+}
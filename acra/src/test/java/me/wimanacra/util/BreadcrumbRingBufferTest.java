@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BreadcrumbRingBufferTest {
+
+    @Test
+    public void recordsNothingWithoutCapacity() {
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(0);
+        buffer.record("tag", 1);
+        assertTrue(buffer.snapshot().isEmpty());
+    }
+
+    @Test
+    public void keepsBreadcrumbsOldestFirst() {
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(4);
+        final long before = System.currentTimeMillis();
+        buffer.record("first", 1);
+        buffer.record("second", BreadcrumbRingBuffer.NO_VALUE);
+        final List<BreadcrumbRingBuffer.Breadcrumb> breadcrumbs = buffer.snapshot();
+        assertEquals(2, breadcrumbs.size());
+        assertSame("first", breadcrumbs.get(0).getTag());
+        assertEquals(1, breadcrumbs.get(0).getValue());
+        assertSame("second", breadcrumbs.get(1).getTag());
+        assertEquals(BreadcrumbRingBuffer.NO_VALUE, breadcrumbs.get(1).getValue());
+        assertTrue(breadcrumbs.get(0).getTime() >= before);
+        assertTrue(breadcrumbs.get(1).getTime() >= breadcrumbs.get(0).getTime());
+    }
+
+    @Test
+    public void overwritesOldestBreadcrumbs() {
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.record("tag", i);
+        }
+        assertValues(buffer.snapshot(), 6, 7, 8, 9);
+    }
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(3);
+        for (int i = 0; i < 10; i++) {
+            buffer.record("tag", i);
+        }
+        assertValues(buffer.snapshot(), 6, 7, 8, 9);
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterRecords() {
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(2);
+        buffer.record("tag", 1);
+        final List<BreadcrumbRingBuffer.Breadcrumb> snapshot = buffer.snapshot();
+        buffer.record("tag", 2);
+        buffer.record("tag", 3);
+        assertValues(snapshot, 1);
+    }
+
+    @Test
+    public void snapshotsOnlyCompleteBreadcrumbsWhileWritersRace() throws InterruptedException {
+        final int threads = 4;
+        final int records = 20000;
+        final BreadcrumbRingBuffer buffer = new BreadcrumbRingBuffer(16);
+        final Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final Integer tag = t;
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < records; i++) {
+                        // encode the writer in the value, so a torn breadcrumb is detected
+                        buffer.record(tag, tag * (long) records + i);
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        while (writers[threads - 1].isAlive()) {
+            final List<BreadcrumbRingBuffer.Breadcrumb> snapshot = buffer.snapshot();
+            assertTrue(snapshot.size() <= 16);
+            for (BreadcrumbRingBuffer.Breadcrumb breadcrumb : snapshot) {
+                assertEquals(breadcrumb.getTag(), (int) (breadcrumb.getValue() / records));
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(buffer.snapshot().size() <= 16);
+    }
+
+    private static void assertValues(List<BreadcrumbRingBuffer.Breadcrumb> breadcrumbs, long... values) {
+        assertEquals(values.length, breadcrumbs.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], breadcrumbs.get(i).getValue());
+        }
+    }
+}
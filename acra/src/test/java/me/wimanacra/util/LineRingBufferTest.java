@@ -0,0 +1,146 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineRingBufferTest {
+
+    @Test
+    public void returnsLinesSeparatedByLineFeeds() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100, 10);
+        assertEquals("", buffer.tail(-1));
+        append(buffer, "first", "second", "third");
+        assertEquals(3, buffer.size());
+        assertEquals("first\nsecond\nthird", buffer.tail(-1));
+        assertEquals("second\nthird", buffer.tail(2));
+        assertEquals("", buffer.tail(0));
+    }
+
+    @Test
+    public void dropsOldestLinesBeyondLineLimit() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100, 2);
+        append(buffer, "1", "2", "3", "4");
+        assertEquals(2, buffer.size());
+        assertEquals("3\n4", buffer.tail(-1));
+    }
+
+    @Test
+    public void dropsOldestLinesBeyondByteCapacity() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(10, 100);
+        append(buffer, "aaaa", "bbbb", "cccc");
+        assertEquals("bbbb\ncccc", buffer.tail(-1));
+        // wraps around the end of the buffer
+        append(buffer, "ddddd");
+        assertEquals("cccc\nddddd", buffer.tail(-1));
+        append(buffer, "eeeee");
+        assertEquals("ddddd\neeeee", buffer.tail(-1));
+    }
+
+    @Test
+    public void keepsEndOfLinesLongerThanCapacity() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(4, 10);
+        append(buffer, "a", "0123456789");
+        assertEquals("6789", buffer.tail(-1));
+    }
+
+    @Test
+    public void recordsNothingWithoutCapacity() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(0, 10);
+        append(buffer, "line");
+        assertEquals(0, buffer.size());
+        assertEquals("", buffer.tail(-1));
+    }
+
+    @Test
+    public void appendsPartOfArray() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100, 10);
+        final byte[] bytes = "skip:line:skip".getBytes("UTF-8");
+        buffer.append(bytes, 5, 4);
+        assertEquals("line", buffer.tail(-1));
+    }
+
+    @Test
+    public void clearRemovesAllLines() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100, 10);
+        append(buffer, "1", "2");
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals("", buffer.tail(-1));
+        append(buffer, "3");
+        assertEquals("3", buffer.tail(-1));
+    }
+
+    @Test
+    public void decodesUtf8() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100, 10);
+        append(buffer, "été", "€");
+        assertEquals("été\n€", buffer.tail(-1));
+    }
+
+    @Test
+    public void growingBufferKeepsAllLines() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(-1);
+        final StringBuilder expected = new StringBuilder();
+        // more lines and bytes than initially allocated
+        for (int i = 0; i < 5000; i++) {
+            final String line = "line number " + i;
+            append(buffer, line);
+            if (i > 0) {
+                expected.append('\n');
+            }
+            expected.append(line);
+        }
+        assertEquals(5000, buffer.size());
+        assertEquals(expected.toString(), buffer.tail(-1));
+        assertEquals("line number 4998\nline number 4999", buffer.tail(2));
+    }
+
+    @Test
+    public void growingBufferDropsOldestLinesBeyondLineLimit() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(100);
+        for (int i = 0; i < 1000; i++) {
+            append(buffer, String.valueOf(i));
+        }
+        assertEquals(100, buffer.size());
+        assertEquals("997\n998\n999", buffer.tail(3));
+        assertEquals("900", buffer.tail(-1).substring(0, 3));
+    }
+
+    @Test
+    public void growingBufferKeepsLongLines() throws Exception {
+        final LineRingBuffer buffer = new LineRingBuffer(2);
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            line.append((char) ('a' + i % 26));
+        }
+        append(buffer, "short", line.toString());
+        assertEquals("short\n" + line, buffer.tail(-1));
+    }
+
+    private static void append(@NonNull LineRingBuffer buffer, @NonNull String... lines) throws UnsupportedEncodingException {
+        for (String line : lines) {
+            final byte[] bytes = line.getBytes("UTF-8");
+            buffer.append(bytes, 0, bytes.length);
+        }
+    }
+}
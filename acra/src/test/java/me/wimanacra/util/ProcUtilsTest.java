@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProcUtilsTest {
+
+    private static final String STATUS = "Name:\tacra\n"
+            + "State:\tS (sleeping)\n"
+            + "VmPeak:\t  123456 kB\n"
+            + "VmRSS:\t   65432 kB\n"
+            + "Threads:\t17\n"
+            + "VmSwap:\t       0 kB";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsNumbersOfKeys() throws Exception {
+        final long[] values = new long[3];
+        new ProcUtils.Reader().readNumbers(write(STATUS), new String[]{"Threads", "VmRSS", "VmSwap"}, values);
+        assertArrayEquals(new long[]{17, 65432, 0}, values);
+    }
+
+    @Test
+    public void readsMissingAndNonNumericValuesAsMinusOne() throws Exception {
+        final long[] values = new long[3];
+        new ProcUtils.Reader().readNumbers(write(STATUS), new String[]{"State", "VmHWM", "Name"}, values);
+        assertArrayEquals(new long[]{-1, -1, -1}, values);
+    }
+
+    @Test
+    public void matchesWholeKeysOnly() throws Exception {
+        final long[] values = new long[2];
+        new ProcUtils.Reader().readNumbers(write("VmRSSx: 1\nVm: 2\nVmRSS: 3\n"), new String[]{"VmRSS", "Vm"}, values);
+        assertArrayEquals(new long[]{3, 2}, values);
+    }
+
+    @Test
+    public void reusesBufferForSmallerFiles() throws Exception {
+        final ProcUtils.Reader reader = new ProcUtils.Reader();
+        final long[] values = new long[1];
+        reader.readNumbers(write(STATUS), new String[]{"Threads"}, values);
+        assertEquals(17, values[0]);
+        // left over content of the previous file must not be parsed
+        reader.readNumbers(write("Name: other\n"), new String[]{"Threads"}, values);
+        assertEquals(-1, values[0]);
+        assertEquals("Name: other\n", reader.read(write("Name: other\n")));
+    }
+
+    @Test
+    public void truncatesLargeFiles() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        while (content.length() < ProcUtils.MAX_FILE_SIZE) {
+            content.append("Padding: 0\n");
+        }
+        content.append("Threads: 17\n");
+        final ProcUtils.Reader reader = new ProcUtils.Reader();
+        final long[] values = new long[1];
+        reader.readNumbers(write(content.toString()), new String[]{"Threads"}, values);
+        assertEquals(-1, values[0]);
+        assertEquals(ProcUtils.MAX_FILE_SIZE, reader.read(write(content.toString())).length());
+    }
+
+    @Test
+    public void readsKeyValues() throws Exception {
+        final JSONObject values = ProcUtils.readKeyValues(write(STATUS));
+        assertEquals("acra", values.get("Name"));
+        assertEquals("S (sleeping)", values.get("State"));
+        assertEquals(123456L, values.get("VmPeak"));
+        assertEquals(17L, values.get("Threads"));
+        assertEquals(6, values.length());
+    }
+
+    @NonNull
+    private String write(@NonNull String content) throws IOException {
+        final File file = folder.newFile();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+}
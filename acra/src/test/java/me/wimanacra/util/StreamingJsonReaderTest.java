@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StreamingJsonReaderTest {
+
+    @Test
+    public void readsTokens() throws Exception {
+        final StreamingJsonReader reader = reader(" { \"a\" : \"x\" ,\n\"b\":[ 1 , {} ] , \"c\" : null } ");
+        reader.beginObject();
+        assertTrue(reader.hasNext());
+        assertEquals("a", reader.nextName());
+        assertEquals(StreamingJsonReader.Token.STRING, reader.peek());
+        assertEquals("x", reader.nextString());
+        assertEquals("b", reader.nextName());
+        assertEquals(StreamingJsonReader.Token.BEGIN_ARRAY, reader.peek());
+        reader.beginArray();
+        assertEquals(StreamingJsonReader.Token.LITERAL, reader.peek());
+        assertEquals(1, reader.nextValue());
+        assertEquals(StreamingJsonReader.Token.BEGIN_OBJECT, reader.peek());
+        reader.beginObject();
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        assertEquals(StreamingJsonReader.Token.END, reader.peek());
+        reader.endArray();
+        assertEquals("c", reader.nextName());
+        assertSame(JSONObject.NULL, reader.nextValue());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+    }
+
+    @Test
+    public void readsLiterals() throws Exception {
+        final StreamingJsonReader reader = reader("[true,false,-12,3000000000,1.5,-2e3]");
+        reader.beginArray();
+        assertEquals(Boolean.TRUE, reader.nextValue());
+        assertEquals(Boolean.FALSE, reader.nextValue());
+        assertEquals(-12, reader.nextValue());
+        assertEquals(3000000000L, reader.nextValue());
+        assertEquals(1.5, reader.nextValue());
+        assertEquals(-2000.0, reader.nextValue());
+        reader.endArray();
+    }
+
+    @Test
+    public void readsNestedValues() throws Exception {
+        final StreamingJsonReader reader = reader("{\"o\":{\"a\":[1,\"two\",{\"three\":3}]}}");
+        final JSONObject object = new JSONObject();
+        reader.nextObject(object);
+        final JSONArray array = object.getJSONObject("o").getJSONArray("a");
+        assertEquals(3, array.length());
+        assertEquals("two", array.getString(1));
+        assertEquals(3, array.getJSONObject(2).getInt("three"));
+    }
+
+    @Test
+    public void decodesEscapesAndUtf8() throws Exception {
+        assertEquals("q\"b\\s/n\nr\rt\tb\bf\fu\u00e9\u2028", reader("\"q\\\"b\\\\s\\/n\\nr\\rt\\tb\\bf\\fu\\u00e9\\u2028\"").nextString());
+        assertEquals("aé€😀", reader("\"aé€😀\"").nextString());
+        // a surrogate pair escaped as two code units
+        assertEquals("😀", reader("\"\\ud83d\\ude00\"").nextString());
+    }
+
+    @Test
+    public void replacesMalformedUtf8() throws Exception {
+        final byte[] bytes = {'"', 'a', (byte) 0xe2, (byte) 0x82, 'b', (byte) 0xff, '"'};
+        assertEquals("a\ufffdb\ufffd", new StreamingJsonReader(new ByteArrayInputStream(bytes)).nextString());
+    }
+
+    @Test
+    public void skipsValues() throws Exception {
+        final StreamingJsonReader reader = reader("{\"a\":{\"b\":[\"}]\\\"\",{}]},\"c\":\"skip\\\"}\",\"d\":-1.5e3,\"e\":\"kept\"}");
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        reader.skipValue();
+        assertEquals("c", reader.nextName());
+        reader.skipValue();
+        assertEquals("d", reader.nextName());
+        reader.skipValue();
+        assertEquals("e", reader.nextName());
+        assertEquals("kept", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    public void readsStringsUpToMaximumSize() throws Exception {
+        final StreamingJsonReader reader = reader("[\"abc\",\"abcd\",\"é\",\"\\n\",\"next\"]");
+        reader.beginArray();
+        assertEquals("abc", reader.nextString(3));
+        assertNull(reader.nextString(3));
+        // the size is counted in encoded bytes
+        assertNull(reader.nextString(1));
+        assertNull(reader.nextString(1));
+        assertEquals("next", reader.nextString(4));
+        reader.endArray();
+    }
+
+    @Test
+    public void reportsPositionOfValues() throws Exception {
+        final String json = "{\"a\":1, \"é\": \"value\"}";
+        final StreamingJsonReader reader = reader(json);
+        reader.beginObject();
+        reader.nextName();
+        reader.skipValue();
+        reader.nextName();
+        reader.peek();
+        final long position = reader.getPosition();
+        assertEquals(json.getBytes("UTF-8").length - "\"value\"}".length(), position);
+        assertEquals("value", reader.nextString());
+    }
+
+    @Test
+    public void readsWhatWriterWrote() throws Exception {
+        final StringBuilder large = new StringBuilder();
+        while (large.length() < 10 * 8192) {
+            large.append("line\n\u0001€");
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.beginObject().name("large").value(large.toString()).name("number").value(42).endObject();
+        writer.close();
+
+        final StreamingJsonReader reader = new StreamingJsonReader(new ByteArrayInputStream(out.toByteArray()));
+        reader.beginObject();
+        assertEquals("large", reader.nextName());
+        assertEquals(large.toString(), reader.nextString());
+        assertEquals("number", reader.nextName());
+        assertEquals(42, reader.nextValue());
+        reader.endObject();
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsMissingSeparator() throws Exception {
+        final StreamingJsonReader reader = reader("[1 2]");
+        reader.beginArray();
+        reader.nextValue();
+        reader.nextValue();
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsTruncatedInput() throws Exception {
+        reader("\"unterminated").nextString();
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsInvalidLiteral() throws Exception {
+        reader("[nope]").nextValue();
+    }
+
+    @NonNull
+    private static StreamingJsonReader reader(@NonNull String json) throws UnsupportedEncodingException {
+        return new StreamingJsonReader(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
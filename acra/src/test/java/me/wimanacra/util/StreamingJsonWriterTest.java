@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2017
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.wimanacra.util;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class StreamingJsonWriterTest {
+
+    @Test
+    public void writesSeparatorsBetweenValues() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.beginObject()
+                .name("a").value(1)
+                .name("b").beginArray().value(true).value(null).beginArray().endArray().beginObject().endObject().endArray()
+                .name("c").value("x")
+                .endObject();
+        writer.close();
+        assertEquals("{\"a\":1,\"b\":[true,null,[],{}],\"c\":\"x\"}", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writesJsonObjectsAndArrays() throws Exception {
+        final JSONObject object = new JSONObject();
+        object.put("string", "value");
+        object.put("int", 42);
+        object.put("long", Long.MAX_VALUE);
+        object.put("double", 1.5);
+        object.put("boolean", false);
+        object.put("null", JSONObject.NULL);
+        object.put("array", new JSONArray().put(1).put("two").put(new JSONObject().put("three", 3)));
+
+        final JSONObject read = new JSONObject(write(object));
+        assertEquals(object.length(), read.length());
+        assertEquals("value", read.getString("string"));
+        assertEquals(42, read.getInt("int"));
+        assertEquals(Long.MAX_VALUE, read.getLong("long"));
+        assertEquals(1.5, read.getDouble("double"), 0);
+        assertEquals(false, read.getBoolean("boolean"));
+        assertTrue(read.isNull("null"));
+        assertEquals(3, read.getJSONArray("array").getJSONObject(2).getInt("three"));
+    }
+
+    @Test
+    public void escapesSpecialCharacters() throws Exception {
+        assertEquals("\"q\\\"b\\\\n\\nr\\rt\\tb\\bf\\f\\u0001\\u001f\"", write("q\"b\\n\nr\rt\tb\bf\f\u0001\u001f"));
+        // valid in JSON, but not in JavaScript strings
+        assertEquals("\"\\u2028\\u2029\"", write("\u2028\u2029"));
+    }
+
+    @Test
+    public void encodesUtf8() throws Exception {
+        final String value = "aé€😀";
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.value(value);
+        writer.close();
+        assertArrayEquals(("\"" + value + "\"").getBytes("UTF-8"), out.toByteArray());
+    }
+
+    @Test
+    public void escapesUnpairedSurrogates() throws Exception {
+        assertEquals("\"\\ud83da\\ude00\"", write("\ud83da\ude00"));
+    }
+
+    @Test
+    public void writesInvalidNumbersAsNull() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.beginArray().value(Double.NaN).value(Double.POSITIVE_INFINITY).endArray();
+        writer.close();
+        assertEquals("[null,null]", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writesValuesLargerThanBuffer() throws Exception {
+        final StringBuilder value = new StringBuilder();
+        while (value.length() < 10 * 8192) {
+            value.append("line\n€");
+        }
+        final JSONObject read = new JSONObject(write(new JSONObject().put("value", value.toString())));
+        assertEquals(value.toString(), read.getString("value"));
+    }
+
+    @NonNull
+    private static String write(@NonNull Object value) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingJsonWriter writer = new StreamingJsonWriter(out);
+        writer.value(value);
+        writer.close();
+        return out.toString("UTF-8");
+    }
+}